@@ -0,0 +1,198 @@
+package com.zzy.analytics;
+
+import com.zzy.domain.event.InvoiceSyncFinishedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import com.zzy.service.AgingBuckets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Daily aging distribution of open invoices, kept in aging_snapshots as (day, status, bucket)
+ * -> count and balance. In memory it holds open balance per (status, due day): seeded from the
+ * open-invoice snapshot, patched with every committed change the seed does not already hold and
+ * re-seeded after each sync so it cannot drift, so writing a day's rows is a pass over the due
+ * days rather than over the invoices. Today's rows are rewritten after each sync and by a short
+ * debounced flush once changes have come in, so reads stay plain range queries; at midnight
+ * yesterday is finalised and the new day written, since buckets move with the date even when
+ * nothing changes.
+ * Days the application was not running have no rows.
+ */
+@Component
+public class AgingHistory {
+    private static final Logger log = LoggerFactory.getLogger(AgingHistory.class);
+
+    /** one stored row; status is null when the range was read across statuses */
+    public record Point(LocalDate date, String status, String bucket, long count, BigDecimal amount) {}
+
+    private record Cell(String status, int dueDay) {}
+
+    private static final String INSERT_SQL = """
+            insert into aging_snapshots (snapshot_date, status, bucket, invoice_count, balance)
+            values (?, ?, ?, ?, ?)
+            """;
+
+    private static final Comparator<Point> ORDER = Comparator.comparing(Point::date)
+            .thenComparing(p -> p.status() == null ? "" : p.status())
+            .thenComparingInt(p -> AgingBuckets.ALL.indexOf(p.bucket()));
+
+    private final OpenInvoiceSnapshots snapshots;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+
+    // guarded by this; null until seeded
+    private Map<Cell, long[]> open;
+    private long seededAt; // data version of the snapshot behind open
+    private boolean dirty = true;
+
+    public AgingHistory(OpenInvoiceSnapshots snapshots, JdbcTemplate jdbc, PlatformTransactionManager txManager) {
+        this.snapshots = snapshots;
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+    }
+
+    /**
+     * stored rows for days in [from, to], oldest first; per status, or summed over statuses when status is null.
+     * today's rows trail the latest changes by up to one flush.
+     */
+    public List<Point> range(LocalDate from, LocalDate to, String status) {
+        List<Point> res = new ArrayList<>();
+        if (status == null) {
+            jdbc.query("""
+                            select snapshot_date, bucket, sum(invoice_count) as cnt, sum(balance) as amt
+                              from aging_snapshots
+                             where snapshot_date between ? and ?
+                             group by snapshot_date, bucket
+                            """,
+                    rs -> {
+                        res.add(new Point(rs.getDate("snapshot_date").toLocalDate(), null, rs.getString("bucket"),
+                                rs.getLong("cnt"), rs.getBigDecimal("amt")));
+                    }, Date.valueOf(from), Date.valueOf(to));
+        } else {
+            jdbc.query("""
+                            select snapshot_date, status, bucket, invoice_count, balance
+                              from aging_snapshots
+                             where snapshot_date between ? and ? and status = ?
+                            """,
+                    rs -> {
+                        res.add(new Point(rs.getDate("snapshot_date").toLocalDate(), rs.getString("status"),
+                                rs.getString("bucket"), rs.getLong("invoice_count"), rs.getBigDecimal("balance")));
+                    }, Date.valueOf(from), Date.valueOf(to), status);
+        }
+        res.sort(ORDER);
+        return res;
+    }
+
+    /** replaces the stored rows of {@code day} with the current distribution bucketed as of that day */
+    private synchronized void record(LocalDate day) {
+        long t0 = System.nanoTime();
+        if (open == null) reseed();
+
+        long d = day.toEpochDay();
+        Map<String, long[][]> byStatus = new TreeMap<>();
+        open.forEach((cell, acc) -> {
+            long[][] buckets = byStatus.computeIfAbsent(cell.status(), s -> new long[AgingBuckets.ALL.size()][2]);
+            // NO_DUE is far in the future, so due-less invoices land in NOT_OVERDUE
+            int b = AgingBuckets.indexOf(d - cell.dueDay());
+            buckets[b][0] += acc[0];
+            buckets[b][1] += acc[1];
+        });
+
+        List<Object[]> rows = new ArrayList<>();
+        byStatus.forEach((status, buckets) -> {
+            for (int b = 0; b < buckets.length; b++) {
+                if (buckets[b][0] == 0) continue;
+                rows.add(new Object[]{Date.valueOf(day), status, AgingBuckets.ALL.get(b),
+                        buckets[b][0], OpenInvoiceSnapshot.fromCents(buckets[b][1])});
+            }
+        });
+        tx.executeWithoutResult(s -> {
+            jdbc.update("delete from aging_snapshots where snapshot_date = ?", Date.valueOf(day));
+            jdbc.batchUpdate(INSERT_SQL, rows);
+        });
+        if (day.equals(today())) dirty = false;
+        log.info("aging snapshot {} written: rows={} from {} due-day cells in {} ms",
+                day, rows.size(), open.size(), (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    private void reseed() {
+        OpenInvoiceSnapshot snap = snapshots.current();
+        open = seed(snap);
+        seededAt = snap.version();
+    }
+
+    private static Map<Cell, long[]> seed(OpenInvoiceSnapshot snap) {
+        Map<Cell, long[]> m = new HashMap<>();
+        for (int r = 0; r < snap.size(); r++) {
+            long[] acc = m.computeIfAbsent(new Cell(snap.statusName(snap.status(r)), snap.dueDay(r)), c -> new long[2]);
+            acc[0]++;
+            acc[1] += snap.balanceCents(r);
+        }
+        return m;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onInvoicesChanged(InvoicesChangedEvent e) {
+        dirty = true;
+        // not seeded yet, or seeded from a snapshot that already has these rows
+        if (open == null || e.version() <= seededAt) return;
+        for (var c : e.changes()) {
+            apply(c.before(), -1);
+            apply(c.after(), 1);
+        }
+    }
+
+    private void apply(InvoicesChangedEvent.Row row, int sign) {
+        if (row == null || row.balance() == null || row.balance().signum() <= 0) return;
+        var cell = new Cell(row.status() == null ? "UNKNOWN" : row.status(), OpenInvoiceSnapshot.epochDay(row.dueDate()));
+        long[] acc = open.computeIfAbsent(cell, c -> new long[2]);
+        acc[0] += sign;
+        acc[1] += sign * OpenInvoiceSnapshot.toCents(row.balance());
+        if (acc[0] == 0) open.remove(cell);
+    }
+
+    @EventListener
+    public synchronized void onSyncFinished(InvoiceSyncFinishedEvent e) {
+        reseed();
+        record(today());
+    }
+
+    /** rewrites today once changes have come in; batches a burst of them into one write */
+    @Scheduled(fixedDelay = 5_000, initialDelay = 5_000)
+    public synchronized void flush() {
+        if (dirty) record(today());
+    }
+
+    /** closes yesterday with any changes since its last write, then starts the new day */
+    @Scheduled(cron = "0 0 0 * * *")
+    public synchronized void rollover() {
+        LocalDate today = today();
+        record(today.minusDays(1));
+        record(today);
+    }
+
+    LocalDate today() {
+        return LocalDate.now();
+    }
+
+    /** due-day cells held in memory */
+    synchronized int cells() {
+        return open == null ? 0 : open.size();
+    }
+}
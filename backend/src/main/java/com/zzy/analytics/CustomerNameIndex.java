@@ -0,0 +1,169 @@
+package com.zzy.analytics;
+
+import com.zzy.domain.event.InvoiceSyncFinishedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory trigram index over customer names, folded to lower case without diacritics
+ * ("Café" matches "cafe"). Entries are the customers table plus the distinct names of legacy
+ * invoices (in either tier) that have no customer_id. A search intersects the posting lists of
+ * the query's trigrams and then checks the few candidates for the real substring (which covers
+ * prefixes); queries shorter than three characters scan the folded names. Rebuilt after each
+ * sync and, lazily, on the first search after invoices changed.
+ */
+@Component
+public class CustomerNameIndex {
+
+    /** customers.id values and legacy invoices.customer_name values whose name matched */
+    public record Match(List<Long> customerIds, List<String> legacyNames) {
+        public boolean isEmpty() { return customerIds.isEmpty() && legacyNames.isEmpty(); }
+    }
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /** one immutable build; entries are either a customer (id > 0) or a legacy name (id == 0) */
+    private record Index(String[] folded, long[] customerIds, String[] legacyNames, Map<Long, int[]> postings) {}
+
+    private final JdbcTemplate jdbc;
+    private volatile Index index;
+    private volatile boolean dirty = true;
+
+    public CustomerNameIndex(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public Match search(String q) {
+        String needle = fold(q);
+        Index ix = current();
+
+        int[] candidates = needle.length() < 3 ? null : candidates(ix, needle);
+        List<Long> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int n = candidates == null ? ix.folded().length : candidates.length;
+        for (int k = 0; k < n; k++) {
+            int e = candidates == null ? k : candidates[k];
+            if (!ix.folded()[e].contains(needle)) continue;
+            if (ix.customerIds()[e] != 0) ids.add(ix.customerIds()[e]);
+            else names.add(ix.legacyNames()[e]);
+        }
+        return new Match(ids, names);
+    }
+
+    /** entries holding every trigram of the needle; smallest posting list first */
+    private static int[] candidates(Index ix, String needle) {
+        List<int[]> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= needle.length(); i++) {
+            int[] p = ix.postings().get(trigram(needle, i));
+            if (p == null) return new int[0];
+            lists.add(p);
+        }
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+        int[] acc = lists.get(0);
+        for (int l = 1; l < lists.size() && acc.length > 0; l++) acc = intersect(acc, lists.get(l));
+        return acc;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { out[n++] = a[i]; i++; j++; }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private Index current() {
+        Index ix = index;
+        if (ix != null && !dirty) return ix;
+        return rebuild();
+    }
+
+    private synchronized Index rebuild() {
+        if (index != null && !dirty) return index;
+        dirty = false; // changes committed from here on mark it again
+
+        List<String> folded = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        List<String> legacy = new ArrayList<>();
+        jdbc.query("select id, name from customers", rs -> {
+            folded.add(fold(rs.getString("name")));
+            ids.add(rs.getLong("id"));
+            legacy.add(null);
+        });
+        jdbc.query("""
+                        select customer_name from invoices where customer_id is null and customer_name is not null
+                        union
+                        select customer_name from invoices_archive where customer_id is null and customer_name is not null
+                        """,
+                rs -> {
+                    String name = rs.getString("customer_name");
+                    folded.add(fold(name));
+                    ids.add(0L);
+                    legacy.add(name);
+                });
+
+        Map<Long, List<Integer>> grams = new HashMap<>();
+        for (int e = 0; e < folded.size(); e++) {
+            String f = folded.get(e);
+            for (int i = 0; i + 3 <= f.length(); i++) {
+                List<Integer> p = grams.computeIfAbsent(trigram(f, i), k -> new ArrayList<>());
+                // entries are added in order, so each list stays sorted; skip repeats within a name
+                if (p.isEmpty() || p.get(p.size() - 1) != e) p.add(e);
+            }
+        }
+        Map<Long, int[]> postings = new HashMap<>(grams.size() * 2);
+        grams.forEach((g, p) -> postings.put(g, p.stream().mapToInt(Integer::intValue).toArray()));
+
+        Index ix = new Index(folded.toArray(String[]::new), ids.stream().mapToLong(Long::longValue).toArray(),
+                legacy.toArray(String[]::new), postings);
+        index = ix;
+        return ix;
+    }
+
+    /** three UTF-16 chars packed into one key */
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /** lower case, accents stripped, surrounding blanks trimmed */
+    static String fold(String s) {
+        if (s == null) return "";
+        String d = Normalizer.normalize(s.trim(), Normalizer.Form.NFD);
+        return MARKS.matcher(d).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInvoicesChanged(InvoicesChangedEvent e) {
+        // balance/status updates are the common case and leave names alone
+        for (var c : e.changes()) {
+            if (c.before() == null
+                    || !Objects.equals(c.before().customerId(), c.after().customerId())
+                    || !Objects.equals(c.before().customerName(), c.after().customerName())) {
+                dirty = true;
+                return;
+            }
+        }
+    }
+
+    @EventListener
+    public void onSyncFinished(InvoiceSyncFinishedEvent e) {
+        dirty = true;
+        rebuild();
+    }
+}
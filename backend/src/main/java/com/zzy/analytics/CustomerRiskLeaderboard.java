@@ -0,0 +1,234 @@
+package com.zzy.analytics;
+
+import com.zzy.cache.ResultCache;
+import com.zzy.domain.dto.CustomerRiskDTO;
+import com.zzy.domain.dto.RankMode;
+import com.zzy.domain.event.InvoiceSyncFinishedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Customer risk ranking kept up to date instead of recomputed per request.
+ * Customers are keyed by customers.id; legacy rows without one group by name under a
+ * negative surrogate key. Per customer it accumulates the overdue invoices (balance > 0, due before today):
+ * count, total, overdue balance and the multiset of their due days (the oldest gives max days
+ * past due). One sorted index per {@link RankMode} orders the customers, so a top-K read walks
+ * K entries. Committed invoice changes are applied as deltas unless the last build already holds
+ * them; everything is rebuilt from the open-invoice snapshot after a sync and at midnight, when
+ * invoices cross their due date.
+ */
+@Component
+public class CustomerRiskLeaderboard {
+
+    private static final class Acc {
+        final long key;
+        final Long customerId;
+        final String customer;
+        int invoices;
+        long totalCents;
+        long overdueCents;
+        /** due day -> overdue invoices due that day */
+        final TreeMap<Integer, Integer> dueDays = new TreeMap<>();
+
+        Acc(long key, Long customerId, String customer) {
+            this.key = key;
+            this.customerId = customerId;
+            this.customer = customer;
+        }
+
+        int oldestDue() { return dueDays.firstKey(); }
+
+        double ratio() { return totalCents == 0 ? 0.0 : (double) overdueCents / totalCents; }
+    }
+
+    // best first; the key keeps orders total so TreeSet never merges two customers
+    private static final Comparator<Acc> BY_AMOUNT = Comparator
+            .comparingLong((Acc a) -> a.overdueCents).reversed()
+            .thenComparingLong(a -> a.key);
+    private static final Comparator<Acc> BY_MAX_DAYS = Comparator
+            .comparingInt(Acc::oldestDue)
+            .thenComparing(Comparator.comparingLong((Acc a) -> a.overdueCents).reversed())
+            .thenComparingLong(a -> a.key);
+    private static final Comparator<Acc> BY_RATIO = Comparator
+            .comparingDouble(Acc::ratio).reversed()
+            .thenComparing(Comparator.comparingLong((Acc a) -> a.overdueCents).reversed())
+            .thenComparingLong(a -> a.key);
+
+    private final OpenInvoiceSnapshots snapshots;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private final Map<Long, Acc> byCustomer = new HashMap<>();
+    /** surrogate keys of name-only customers; stable for the life of the process */
+    private final Map<String, Long> legacyKeys = new HashMap<>();
+    private final Map<RankMode, TreeSet<Acc>> ranked = new EnumMap<>(RankMode.class);
+    /** the "today" overdue is counted against; MIN_VALUE until first built */
+    private long day = Long.MIN_VALUE;
+    /** data version of the snapshot the last build read */
+    private long builtAt;
+
+    public CustomerRiskLeaderboard(OpenInvoiceSnapshots snapshots) {
+        this.snapshots = snapshots;
+        ranked.put(RankMode.AMOUNT, new TreeSet<>(BY_AMOUNT));
+        ranked.put(RankMode.MAX_DAYS, new TreeSet<>(BY_MAX_DAYS));
+        ranked.put(RankMode.RATIO, new TreeSet<>(BY_RATIO));
+    }
+
+    /** the first {@code k} customers of the mode's index */
+    public List<CustomerRiskDTO> top(RankMode mode, int k) {
+        long today = today();
+        lock.readLock().lock();
+        try {
+            if (day == today) return read(mode, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+        // first read, or midnight passed before the rollover ran
+        lock.writeLock().lock();
+        try {
+            if (day != today) rebuild(today);
+            return read(mode, k);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<CustomerRiskDTO> read(RankMode mode, int k) {
+        var res = new ArrayList<CustomerRiskDTO>(Math.min(k, byCustomer.size()));
+        for (Acc a : ranked.get(mode)) {
+            if (res.size() == k) break;
+            double ratio = a.totalCents == 0 ? 0.0 :
+                    BigDecimal.valueOf(a.overdueCents).divide(BigDecimal.valueOf(a.totalCents), 6, RoundingMode.HALF_UP).doubleValue();
+            res.add(new CustomerRiskDTO(a.customerId, a.customer, a.invoices,
+                    OpenInvoiceSnapshot.fromCents(a.totalCents), OpenInvoiceSnapshot.fromCents(a.overdueCents),
+                    (int) (day - a.oldestDue()), ratio));
+        }
+        return res;
+    }
+
+    /** one scan of the snapshot; caller holds the write lock */
+    private void rebuild(long today) {
+        OpenInvoiceSnapshot snap = snapshots.current();
+        builtAt = snap.version();
+        byCustomer.clear();
+        ranked.values().forEach(TreeSet::clear);
+        day = today;
+
+        Acc[] byCode = new Acc[snap.customerCount()];
+        for (int r = 0; r < snap.size(); r++) {
+            int d = snap.dueDay(r);
+            if (d >= today) continue;
+            int c = snap.customer(r);
+            Acc a = byCode[c];
+            if (a == null) byCode[c] = a = newAcc(snap.customerId(c), snap.customerName(c));
+            a.invoices++;
+            a.totalCents += snap.totalCents(r);
+            a.overdueCents += snap.balanceCents(r);
+            a.dueDays.merge(d, 1, Integer::sum);
+        }
+        for (Acc a : byCode) {
+            if (a == null) continue;
+            byCustomer.put(a.key, a);
+            ranked.values().forEach(s -> s.add(a));
+        }
+    }
+
+    @Order(ResultCache.BEFORE_VERSION_BUMP)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInvoicesChanged(InvoicesChangedEvent e) {
+        lock.writeLock().lock();
+        try {
+            // not built yet, or built from a snapshot that already has these rows
+            if (day == Long.MIN_VALUE || e.version() <= builtAt) return;
+            for (var c : e.changes()) {
+                apply(c.before(), -1);
+                apply(c.after(), 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(InvoicesChangedEvent.Row row, int sign) {
+        if (row == null || row.dueDate() == null || row.balance() == null || row.balance().signum() <= 0) return;
+        int due = (int) row.dueDate().toEpochDay();
+        if (due >= day) return;
+
+        long key = keyOf(row.customerId(), row.customerName());
+        Acc a = byCustomer.get(key);
+        if (a == null) {
+            if (sign < 0) return; // never counted
+            byCustomer.put(key, a = newAcc(row.customerId(), row.customerName()));
+        } else {
+            // the indexes sort on the fields about to change
+            for (var s : ranked.values()) s.remove(a);
+        }
+
+        a.invoices += sign;
+        a.totalCents += sign * OpenInvoiceSnapshot.toCents(row.totalAmt());
+        a.overdueCents += sign * OpenInvoiceSnapshot.toCents(row.balance());
+        a.dueDays.compute(due, (d, n) -> {
+            int left = (n == null ? 0 : n) + sign;
+            return left > 0 ? left : null;
+        });
+
+        if (a.invoices > 0 && !a.dueDays.isEmpty()) {
+            for (var s : ranked.values()) s.add(a);
+        } else {
+            byCustomer.remove(key);
+        }
+    }
+
+    private long keyOf(Long customerId, String name) {
+        if (customerId != null) return customerId;
+        return legacyKeys.computeIfAbsent(OpenInvoiceSnapshot.customerKey(name), n -> -(legacyKeys.size() + 1L));
+    }
+
+    private Acc newAcc(Long customerId, String name) {
+        return new Acc(keyOf(customerId, name), customerId, OpenInvoiceSnapshot.customerKey(name));
+    }
+
+    @Order(ResultCache.BEFORE_VERSION_BUMP)
+    @EventListener
+    public void onSyncFinished(InvoiceSyncFinishedEvent e) {
+        refresh();
+    }
+
+    /** invoices due yesterday become overdue and every max-days value moves by one */
+    @Scheduled(cron = "0 0 0 * * *")
+    public void rollover() {
+        refresh();
+    }
+
+    /** epoch day overdue is counted against; tests step it over midnight */
+    long today() {
+        return LocalDate.now().toEpochDay();
+    }
+
+    private void refresh() {
+        lock.writeLock().lock();
+        try {
+            rebuild(today());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.zzy.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Fenwick (binary indexed) tree of (count, cents) per epoch day over [base, base + capacity).
+ * Point updates and range sums are O(log capacity); a day outside the range grows it.
+ * Not thread-safe.
+ */
+final class DayFenwick {
+    private long base;
+    private long[] count;  // 1-based Fenwick arrays
+    private long[] cents;
+    // point values, kept so growing can rebuild the tree in linear time
+    private long[] dayCount;
+    private long[] dayCents;
+
+    DayFenwick(long fromDay, long toDay) {
+        base = fromDay;
+        int n = (int) (toDay - fromDay + 1);
+        dayCount = new long[n];
+        dayCents = new long[n];
+        count = new long[n + 1];
+        cents = new long[n + 1];
+    }
+
+    long firstDay() { return base; }
+
+    long lastDay() { return base + dayCount.length - 1; }
+
+    void add(long day, long dCount, long dCents) {
+        if (day < base || day > lastDay()) grow(day);
+        int i = (int) (day - base);
+        dayCount[i] += dCount;
+        dayCents[i] += dCents;
+        for (int j = i + 1; j < count.length; j += j & -j) {
+            count[j] += dCount;
+            cents[j] += dCents;
+        }
+    }
+
+    /** {count, cents} summed over days [from, to], clipped to the tracked range */
+    long[] sum(long from, long to) {
+        long lo = Math.max(from, base), hi = Math.min(to, lastDay());
+        if (lo > hi) return new long[]{0, 0};
+        int a = (int) (lo - base), b = (int) (hi - base) + 1;
+        return new long[]{prefix(count, b) - prefix(count, a), prefix(cents, b) - prefix(cents, a)};
+    }
+
+    /** sum of the first n days */
+    private static long prefix(long[] tree, int n) {
+        long s = 0;
+        for (int j = n; j > 0; j -= j & -j) s += tree[j];
+        return s;
+    }
+
+    /** at least doubles the range towards {@code day}, then rebuilds the tree from the point values */
+    private void grow(long day) {
+        int n = dayCount.length;
+        long from = day < base ? Math.min(day, base - n) : base;
+        long to = day > lastDay() ? Math.max(day, lastDay() + n) : lastDay();
+        int size = (int) (to - from + 1);
+        int shift = (int) (base - from);
+
+        long[] c = new long[size], m = new long[size];
+        System.arraycopy(dayCount, 0, c, shift, n);
+        System.arraycopy(dayCents, 0, m, shift, n);
+        base = from;
+        dayCount = c;
+        dayCents = m;
+        count = build(c);
+        cents = build(m);
+    }
+
+    private static long[] build(long[] points) {
+        long[] tree = new long[points.length + 1];
+        for (int i = 1; i < tree.length; i++) {
+            tree[i] += points[i - 1];
+            int j = i + (i & -i);
+            if (j < tree.length) tree[j] += tree[i];
+        }
+        return tree;
+    }
+
+    /** same days, built in one pass */
+    static DayFenwick of(long fromDay, long[] dayCount, long[] dayCents) {
+        var f = new DayFenwick(fromDay, fromDay + dayCount.length - 1);
+        f.dayCount = Arrays.copyOf(dayCount, dayCount.length);
+        f.dayCents = Arrays.copyOf(dayCents, dayCents.length);
+        f.count = build(f.dayCount);
+        f.cents = build(f.dayCents);
+        return f;
+    }
+}
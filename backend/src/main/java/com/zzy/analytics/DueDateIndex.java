@@ -0,0 +1,128 @@
+package com.zzy.analytics;
+
+import com.zzy.cache.ResultCache;
+import com.zzy.domain.event.InvoiceSyncFinishedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Open balance (count, cents) per due day in a {@link DayFenwick}, so any due-date range sums
+ * in O(log days). Only invoices with balance > 0 and a due date are counted; "overdue" is a
+ * range ending yesterday, so the index needs no work when the day rolls over.
+ * Seeded from the open-invoice snapshot on first use, patched with every committed change the
+ * seed does not already hold, and re-seeded after each sync so it cannot drift from the table for long.
+ */
+@Component
+public class DueDateIndex {
+    /** days tracked on each side of today even before an invoice falls there */
+    private static final int MARGIN_DAYS = 366;
+
+    private final OpenInvoiceSnapshots snapshots;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private DayFenwick tree; // guarded by lock, null until seeded
+    private long seededAt;   // guarded by lock: data version of the snapshot behind tree
+
+    public DueDateIndex(OpenInvoiceSnapshots snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    /** {count, cents} of open invoices due in [from, to] */
+    public long[] sum(LocalDate from, LocalDate to) {
+        ensureSeeded();
+        lock.readLock().lock();
+        try {
+            return tree.sum(from.toEpochDay(), to.toEpochDay());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** first tracked day; nothing is due before it */
+    public LocalDate firstDay() {
+        ensureSeeded();
+        lock.readLock().lock();
+        try {
+            return LocalDate.ofEpochDay(tree.firstDay());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void ensureSeeded() {
+        lock.readLock().lock();
+        try {
+            if (tree != null) return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        reseed(false);
+    }
+
+    private void reseed(boolean force) {
+        lock.writeLock().lock();
+        try {
+            if (tree == null || force) {
+                OpenInvoiceSnapshot snap = snapshots.current();
+                tree = seed(snap);
+                seededAt = snap.version();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static DayFenwick seed(OpenInvoiceSnapshot snap) {
+        long today = LocalDate.now().toEpochDay();
+        long from = today - MARGIN_DAYS, to = today + MARGIN_DAYS;
+        for (int r = 0; r < snap.size(); r++) {
+            int d = snap.dueDay(r);
+            if (d == OpenInvoiceSnapshot.NO_DUE) continue;
+            from = Math.min(from, d);
+            to = Math.max(to, d);
+        }
+
+        int n = (int) (to - from + 1);
+        long[] count = new long[n], cents = new long[n];
+        for (int r = 0; r < snap.size(); r++) {
+            int d = snap.dueDay(r);
+            if (d == OpenInvoiceSnapshot.NO_DUE) continue;
+            count[(int) (d - from)]++;
+            cents[(int) (d - from)] += snap.balanceCents(r);
+        }
+        return DayFenwick.of(from, count, cents);
+    }
+
+    @Order(ResultCache.BEFORE_VERSION_BUMP)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInvoicesChanged(InvoicesChangedEvent e) {
+        lock.writeLock().lock();
+        try {
+            // not seeded yet, or seeded from a snapshot that already has these rows
+            if (tree == null || e.version() <= seededAt) return;
+            for (var c : e.changes()) {
+                apply(c.before(), -1);
+                apply(c.after(), 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(InvoicesChangedEvent.Row row, int sign) {
+        if (row == null || row.dueDate() == null || row.balance() == null || row.balance().signum() <= 0) return;
+        tree.add(row.dueDate().toEpochDay(), sign, sign * OpenInvoiceSnapshot.toCents(row.balance()));
+    }
+
+    @Order(ResultCache.BEFORE_VERSION_BUMP)
+    @EventListener
+    public void onSyncFinished(InvoiceSyncFinishedEvent e) {
+        reseed(true);
+    }
+}
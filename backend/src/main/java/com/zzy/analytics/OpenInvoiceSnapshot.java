@@ -0,0 +1,178 @@
+package com.zzy.analytics;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable column store of open invoices (balance > 0), one array slot per invoice.
+ * Due dates are epoch days ({@link #NO_DUE} when missing), money is in cents,
+ * customers and statuses are dictionary codes into {@link #customerName}/{@link #statusName}.
+ * A customer code stands for one customers.id; legacy rows without one share a code per name.
+ * Scans over it touch no entities and allocate nothing per row.
+ */
+public final class OpenInvoiceSnapshot {
+    /** due day of invoices without a due date; sorts after every real day, so they never count as overdue */
+    public static final int NO_DUE = Integer.MAX_VALUE;
+
+    public static final OpenInvoiceSnapshot EMPTY = new Builder(0).build(-1);
+
+    private final long version;
+    private final int size;
+    private final int[] dueDay;
+    private final long[] balanceCents;
+    private final long[] totalCents;
+    private final int[] customer;
+    private final int[] status;
+    private final String[] customers;
+    private final long[] customerIds;
+    private final String[] statuses;
+    private final int minDueDay;
+
+    private OpenInvoiceSnapshot(long version, int size, int[] dueDay, long[] balanceCents, long[] totalCents,
+                                int[] customer, int[] status, String[] customers, long[] customerIds,
+                                String[] statuses, int minDueDay) {
+        this.version = version;
+        this.size = size;
+        this.dueDay = dueDay;
+        this.balanceCents = balanceCents;
+        this.totalCents = totalCents;
+        this.customer = customer;
+        this.status = status;
+        this.customers = customers;
+        this.customerIds = customerIds;
+        this.statuses = statuses;
+        this.minDueDay = minDueDay;
+    }
+
+    /** data version this snapshot was built from */
+    public long version() { return version; }
+
+    public int size() { return size; }
+
+    public int dueDay(int row) { return dueDay[row]; }
+
+    public long balanceCents(int row) { return balanceCents[row]; }
+
+    public long totalCents(int row) { return totalCents[row]; }
+
+    public int customer(int row) { return customer[row]; }
+
+    public int status(int row) { return status[row]; }
+
+    public int customerCount() { return customers.length; }
+
+    public String customerName(int code) { return customers[code]; }
+
+    /** customers.id behind a code, null for a legacy name-only customer */
+    public Long customerId(int code) { return customerIds[code] == 0 ? null : customerIds[code]; }
+
+    public int statusCount() { return statuses.length; }
+
+    public String statusName(int code) { return statuses[code]; }
+
+    /** smallest real due day, or NO_DUE when no row has one */
+    public int minDueDay() { return minDueDay; }
+
+    public static long toCents(BigDecimal v) {
+        return v == null ? 0 : v.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    public static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    public static int epochDay(LocalDate d) {
+        return d == null ? NO_DUE : (int) d.toEpochDay();
+    }
+
+    /** grouping name of legacy rows: trimmed, "-" when missing */
+    public static String customerKey(String name) {
+        return name == null ? "-" : name.trim();
+    }
+
+    /** growable columns; not thread-safe */
+    static final class Builder {
+        private int size;
+        private int[] dueDay;
+        private long[] balanceCents;
+        private long[] totalCents;
+        private int[] customer;
+        private int[] status;
+        private final Map<Long, Integer> customerIdCodes = new HashMap<>();
+        private final Map<String, Integer> legacyCodes = new HashMap<>();
+        private String[] customerNames = new String[16];
+        private long[] customerIdOf = new long[16];
+        private int customerCount;
+        private final Map<String, Integer> statusCodes = new HashMap<>();
+        private int minDueDay = NO_DUE;
+
+        Builder(int capacity) {
+            int c = Math.max(16, capacity);
+            dueDay = new int[c];
+            balanceCents = new long[c];
+            totalCents = new long[c];
+            customer = new int[c];
+            status = new int[c];
+        }
+
+        void add(Long customerId, String customerName, String statusName, LocalDate due,
+                 BigDecimal balance, BigDecimal total) {
+            if (size == dueDay.length) grow();
+            int d = epochDay(due);
+            dueDay[size] = d;
+            balanceCents[size] = toCents(balance);
+            totalCents[size] = toCents(total);
+            customer[size] = customerCode(customerId, customerName);
+            status[size] = code(statusCodes, statusName == null ? "UNKNOWN" : statusName);
+            minDueDay = Math.min(minDueDay, d);
+            size++;
+        }
+
+        private int customerCode(Long customerId, String name) {
+            Integer c = customerId != null ? customerIdCodes.get(customerId) : legacyCodes.get(customerKey(name));
+            if (c != null) return c;
+            c = customerCount++;
+            if (c == customerNames.length) {
+                customerNames = Arrays.copyOf(customerNames, c * 2);
+                customerIdOf = Arrays.copyOf(customerIdOf, c * 2);
+            }
+            customerNames[c] = customerKey(name);
+            if (customerId != null) {
+                customerIdOf[c] = customerId;
+                customerIdCodes.put(customerId, c);
+            } else {
+                legacyCodes.put(customerKey(name), c);
+            }
+            return c;
+        }
+
+        private static int code(Map<String, Integer> dict, String value) {
+            return dict.computeIfAbsent(value, k -> dict.size());
+        }
+
+        private void grow() {
+            int c = dueDay.length * 2;
+            dueDay = Arrays.copyOf(dueDay, c);
+            balanceCents = Arrays.copyOf(balanceCents, c);
+            totalCents = Arrays.copyOf(totalCents, c);
+            customer = Arrays.copyOf(customer, c);
+            status = Arrays.copyOf(status, c);
+        }
+
+        OpenInvoiceSnapshot build(long version) {
+            return new OpenInvoiceSnapshot(version, size, dueDay, balanceCents, totalCents,
+                    customer, status, Arrays.copyOf(customerNames, customerCount),
+                    Arrays.copyOf(customerIdOf, customerCount), decode(statusCodes), minDueDay);
+        }
+
+        private static String[] decode(Map<String, Integer> dict) {
+            String[] values = new String[dict.size()];
+            dict.forEach((v, c) -> values[c] = v);
+            return values;
+        }
+    }
+}
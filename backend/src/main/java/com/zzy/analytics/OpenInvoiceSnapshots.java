@@ -0,0 +1,129 @@
+package com.zzy.analytics;
+
+import com.zzy.domain.event.InvoiceSyncFinishedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Holds the current {@link OpenInvoiceSnapshot}.
+ * Each invoice write bumps the data version as its transaction commits and stamps it on the
+ * {@link InvoicesChangedEvent}; the snapshot is rebuilt eagerly when a sync finishes and lazily
+ * by the first reader that sees it behind. A rebuild is one column-only JDBC scan, and the
+ * finished snapshot replaces the old one in a single volatile write, so readers never see a
+ * half-built one.
+ * Commits hold {@link #commits} shared from the bump until they are done and a rebuild holds it
+ * exclusively, so a snapshot of version v contains exactly the changes stamped v or lower.
+ */
+@Component
+public class OpenInvoiceSnapshots {
+    private static final Logger log = LoggerFactory.getLogger(OpenInvoiceSnapshots.class);
+
+    private static final String LOAD_SQL = """
+            select i.customer_id, coalesce(c.name, i.customer_name) as customer_name,
+                   i.status, i.due_date, i.balance, i.total_amt
+              from invoices i
+              left join customers c on c.id = i.customer_id
+             where i.balance > 0
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final AtomicLong version = new AtomicLong();
+    private final ReadWriteLock commits = new ReentrantReadWriteLock();
+    private volatile OpenInvoiceSnapshot current = OpenInvoiceSnapshot.EMPTY;
+
+    public OpenInvoiceSnapshots(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** the latest snapshot, rebuilt first if invoices changed since it was taken */
+    public OpenInvoiceSnapshot current() {
+        OpenInvoiceSnapshot s = current;
+        return s.version() == version.get() ? s : rebuild();
+    }
+
+    /** single rebuild at a time; callers that queued behind it reuse its result */
+    public synchronized OpenInvoiceSnapshot rebuild() {
+        OpenInvoiceSnapshot s = current;
+        if (s.version() == version.get()) return s;
+
+        long t0 = System.nanoTime();
+        var b = new OpenInvoiceSnapshot.Builder(s.size());
+        long v;
+        commits.writeLock().lock();
+        try {
+            v = version.get();
+            jdbc.query(LOAD_SQL, rs -> {
+                var due = rs.getDate("due_date");
+                long cid = rs.getLong("customer_id");
+                b.add(rs.wasNull() ? null : cid, rs.getString("customer_name"), rs.getString("status"),
+                        due == null ? null : due.toLocalDate(),
+                        rs.getBigDecimal("balance"), rs.getBigDecimal("total_amt"));
+            });
+        } finally {
+            commits.writeLock().unlock();
+        }
+        s = b.build(v);
+        current = s;
+        log.info("open-invoice snapshot v{} rebuilt: rows={}, customers={} in {} ms",
+                v, s.size(), s.customerCount(), (System.nanoTime() - t0) / 1_000_000);
+        return s;
+    }
+
+    /** stamps the event as its transaction commits, before any after-commit listener sees it */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener
+    public void onInvoicesChanged(InvoicesChangedEvent e) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            e.stamp(version.incrementAndGet());
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean held;
+
+            @Override
+            public int getOrder() {
+                return Ordered.HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                commits.readLock().lock();
+                held = true;
+                e.stamp(version.incrementAndGet());
+            }
+
+            @Override
+            public void afterCommit() {
+                release();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                release(); // only still held on a rollback; the version then moved with nothing behind it
+            }
+
+            private void release() {
+                if (!held) return;
+                held = false;
+                commits.readLock().unlock();
+            }
+        });
+    }
+
+    @EventListener
+    public void onSyncFinished(InvoiceSyncFinishedEvent e) {
+        rebuild();
+    }
+}
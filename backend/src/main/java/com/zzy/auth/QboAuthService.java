@@ -4,33 +4,46 @@ import com.intuit.oauth2.config.Scope;
 import com.intuit.oauth2.exception.InvalidRequestException;
 import com.zzy.config.QboProps;
 import com.intuit.oauth2.client.OAuth2PlatformClient;
-import com.intuit.oauth2.config.Environment;
 import com.intuit.oauth2.config.OAuth2Config;
 import com.intuit.oauth2.data.BearerTokenResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class QboAuthService {
+    private static final Logger log = LoggerFactory.getLogger(QboAuthService.class);
+
+    /** request path refreshes only when the token is about to die */
+    private static final long INLINE_REFRESH_SEC = 30;
+    /** the background task refreshes well before that, so requests normally never wait */
+    private static final long PROACTIVE_REFRESH_SEC = 5 * 60;
+    private static final long REFRESH_TIMEOUT_SEC = 30;
+
     private final QboProps props;
     private final TokenStore store;
 
     private final OAuth2Config oauth2Config;
     private final OAuth2PlatformClient oauthClient;
 
-    public QboAuthService(QboProps props, TokenStore store) {
+    /** at most one refresh in flight per realm; other callers wait on it */
+    private final Map<String, CompletableFuture<TokenStore.Tokens>> refreshing = new ConcurrentHashMap<>();
+
+    public QboAuthService(QboProps props, TokenStore store,
+                          OAuth2Config oauth2Config, OAuth2PlatformClient oauthClient) {
         this.props = props;
         this.store = store;
-
-        this.oauth2Config = new OAuth2Config.OAuth2ConfigBuilder(
-                props.getClientId(),
-                props.getClientSecret())
-                .callDiscoveryAPI(Environment.SANDBOX)
-                .buildConfig();
-
-        this.oauthClient = new OAuth2PlatformClient(oauth2Config);
+        this.oauth2Config = oauth2Config;
+        this.oauthClient = oauthClient;
     }
 
     public String buildAuthUrl(String state) {
@@ -43,21 +56,72 @@ public class QboAuthService {
         }
     }
 
-    public void exchangeCodeForTokens(String code) throws Exception {
+    public void exchangeCodeForTokens(String code, String realmId) throws Exception {
         BearerTokenResponse resp = oauthClient.retrieveBearerTokens(code, props.getRedirectUri());
-        store.setAccessToken(resp.getAccessToken());
-        store.setRefreshToken(resp.getRefreshToken());
-        store.setAccessTokenExpiryEpochSec(System.currentTimeMillis()/1000 + resp.getExpiresIn());
+        store.publish(new TokenStore.Tokens(
+                resp.getAccessToken(),
+                resp.getRefreshToken(),
+                System.currentTimeMillis()/1000 + resp.getExpiresIn(),
+                realmId));
     }
 
     public void refreshIfNeeded() throws Exception {
-        long now = System.currentTimeMillis()/1000;
-        if (store.getAccessToken() == null) throw new IllegalStateException("Not connected.");
-        if (now + 30 < store.getAccessTokenExpiryEpochSec()) return;
-        BearerTokenResponse r = oauthClient.refreshToken(store.getRefreshToken());
-        store.setAccessToken(r.getAccessToken());
-        store.setRefreshToken(r.getRefreshToken());
-        store.setAccessTokenExpiryEpochSec(now + r.getExpiresIn());
+        var t = store.snapshot();
+        if (t.accessToken() == null) throw new IllegalStateException("Not connected.");
+        if (!t.expiresWithin(INLINE_REFRESH_SEC)) return;
+        await(refresh(t, INLINE_REFRESH_SEC));
+    }
+
+    /** keeps the access token fresh ahead of time so no request pays refresh latency */
+    @Scheduled(fixedDelay = 60_000, initialDelay = 60_000)
+    public void refreshAhead() {
+        var t = store.snapshot();
+        if (t.accessToken() == null || !t.expiresWithin(PROACTIVE_REFRESH_SEC)) return;
+        try {
+            await(refresh(t, PROACTIVE_REFRESH_SEC));
+            log.info("QBO access token refreshed ahead of expiry, realm={}", t.realmId());
+        } catch (Exception e) {
+            log.warn("QBO proactive token refresh failed, realm={}: {}", t.realmId(), e.getMessage());
+        }
+    }
+
+    /**
+     * joins the realm's in-flight refresh or starts one.
+     * the starter re-checks the store first: a refresh may have landed since {@code seen} was read.
+     */
+    private CompletableFuture<TokenStore.Tokens> refresh(TokenStore.Tokens seen, long thresholdSec) {
+        String key = String.valueOf(seen.realmId());
+        var mine = new CompletableFuture<TokenStore.Tokens>();
+        var inFlight = refreshing.putIfAbsent(key, mine);
+        if (inFlight != null) return inFlight;
+
+        try {
+            var cur = store.snapshot();
+            if (cur.accessToken() != null && !cur.expiresWithin(thresholdSec)) {
+                mine.complete(cur);
+            } else {
+                long now = System.currentTimeMillis()/1000;
+                BearerTokenResponse r = oauthClient.refreshToken(cur.refreshToken());
+                var next = new TokenStore.Tokens(r.getAccessToken(), r.getRefreshToken(),
+                        now + r.getExpiresIn(), cur.realmId());
+                // a reconnect (/oauth2redirect) wins over a refresh that raced with it
+                if (!store.compareAndPublish(cur, next)) next = store.snapshot();
+                mine.complete(next);
+            }
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+        } finally {
+            refreshing.remove(key, mine);
+        }
+        return mine;
+    }
+
+    private static void await(CompletableFuture<TokenStore.Tokens> f) throws Exception {
+        try {
+            f.get(REFRESH_TIMEOUT_SEC, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception c ? c : e;
+        }
     }
 
     public String generateCsrf() {
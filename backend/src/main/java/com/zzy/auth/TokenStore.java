@@ -1,14 +1,41 @@
 package com.zzy.auth;
 
-import lombok.Data;
 import org.springframework.stereotype.Component;
 
-@Data
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current OAuth tokens as one immutable snapshot.
+ * Writers publish a whole new snapshot, so readers never see an access token
+ * paired with a rotated-out refresh token.
+ */
 @Component
 public class TokenStore {
-    private String accessToken;
-    private String refreshToken;
-    private long   accessTokenExpiryEpochSec;
-    private String realmId;
-    public boolean hasTokens() { return accessToken != null && refreshToken != null; }
+
+    public record Tokens(String accessToken, String refreshToken, long accessTokenExpiryEpochSec, String realmId) {
+        public boolean expiresWithin(long seconds) {
+            return System.currentTimeMillis()/1000 + seconds >= accessTokenExpiryEpochSec;
+        }
+    }
+
+    private static final Tokens EMPTY = new Tokens(null, null, 0, null);
+
+    private final AtomicReference<Tokens> current = new AtomicReference<>(EMPTY);
+
+    public Tokens snapshot() { return current.get(); }
+
+    public void publish(Tokens tokens) { current.set(tokens); }
+
+    /** publishes only if nobody replaced the snapshot since {@code expected} was read */
+    public boolean compareAndPublish(Tokens expected, Tokens next) { return current.compareAndSet(expected, next); }
+
+    public String getAccessToken() { return current.get().accessToken(); }
+    public String getRefreshToken() { return current.get().refreshToken(); }
+    public long getAccessTokenExpiryEpochSec() { return current.get().accessTokenExpiryEpochSec(); }
+    public String getRealmId() { return current.get().realmId(); }
+
+    public boolean hasTokens() {
+        var t = current.get();
+        return t.accessToken() != null && t.refreshToken() != null;
+    }
 }
@@ -0,0 +1,104 @@
+package com.zzy.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Small in-process cache: LRU eviction past {@code maxSize}, per-entry TTL,
+ * and hit/miss/eviction counters. Loads run outside the lock, so two threads
+ * missing the same key may both load; the last one wins.
+ */
+public class BoundedCache<K, V> {
+
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    private record Entry<V>(V value, long expiresAtNanos) {}
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // access-ordered, guarded by this
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    public BoundedCache(String name, int maxSize, java.time.Duration ttl) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                boolean evict = size() > BoundedCache.this.maxSize;
+                if (evict) evictions.incrementAndGet();
+                return evict;
+            }
+        };
+    }
+
+    /** cached value, or null when absent/expired (counts as a miss) */
+    public V getIfPresent(K key) {
+        synchronized (this) {
+            Entry<V> e = map.get(key);
+            if (e != null && e.expiresAtNanos() - System.nanoTime() > 0) {
+                hits.incrementAndGet();
+                return e.value();
+            }
+            if (e != null) map.remove(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public V get(K key, Loader<K, V> loader) throws Exception {
+        V v = getIfPresent(key);
+        if (v != null) return v;
+        v = loader.load(key);
+        if (v != null) put(key, v);
+        return v;
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+    }
+
+    public synchronized void invalidate(K key) {
+        map.remove(key);
+    }
+
+    public synchronized void invalidateIf(Predicate<K> test) {
+        for (Iterator<K> it = map.keySet().iterator(); it.hasNext(); ) {
+            if (test.test(it.next())) it.remove();
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public Map<String, Object> stats() {
+        long h = hits.get(), m = misses.get();
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("name", name);
+        s.put("size", size());
+        s.put("maxSize", maxSize);
+        s.put("hits", h);
+        s.put("misses", m);
+        s.put("hitRatio", h + m == 0 ? 0.0 : Math.round(h * 1000.0 / (h + m)) / 1000.0);
+        s.put("evictions", evictions.get());
+        return s;
+    }
+}
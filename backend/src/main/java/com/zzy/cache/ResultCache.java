@@ -0,0 +1,79 @@
+package com.zzy.cache;
+
+import com.zzy.domain.event.InvoiceSyncFinishedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Results of the dashboard read endpoints (summary, aging, risk, KPI), keyed on endpoint name,
+ * parameters, data version and today's date. Committed invoice writes and finished syncs bump
+ * the version, so a cached result is never served across a data change; the date covers
+ * buckets that move at midnight without any write.
+ */
+@Component
+public class ResultCache {
+
+    /**
+     * Order of the derived-structure listeners (risk leaderboard, due-date index). The version is
+     * bumped after them, so a reader that sees the new version also sees the updated structures.
+     */
+    public static final int BEFORE_VERSION_BUMP = Ordered.LOWEST_PRECEDENCE - 1;
+
+    private record Key(String name, List<Object> params, long version, long day) {}
+
+    // the TTL is only a backstop; entries normally die by version or LRU
+    private final BoundedCache<Key, Object> cache = new BoundedCache<>("results", 512, Duration.ofMinutes(10));
+    private final AtomicLong version = new AtomicLong();
+
+    /** cached result of {@code compute} for these params, computed on a miss */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String name, Supplier<T> compute, Object... params) {
+        // version read before computing: a write landing mid-compute leaves the entry under the old one
+        var key = new Key(name, Arrays.asList(params), version.get(), LocalDate.now().toEpochDay());
+        Object v = cache.getIfPresent(key);
+        if (v == null) {
+            v = compute.get();
+            if (v != null) cache.put(key, v);
+        }
+        return (T) v;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public Map<String, Object> stats() {
+        var s = cache.stats();
+        s.put("version", version.get());
+        return s;
+    }
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInvoicesChanged(InvoicesChangedEvent e) {
+        bump();
+    }
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener
+    public void onSyncFinished(InvoiceSyncFinishedEvent e) {
+        bump();
+    }
+
+    private void bump() {
+        long v = version.incrementAndGet();
+        cache.invalidateIf(k -> k.version() < v);
+    }
+}
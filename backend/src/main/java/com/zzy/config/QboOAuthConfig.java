@@ -0,0 +1,24 @@
+package com.zzy.config;
+
+import com.intuit.oauth2.client.OAuth2PlatformClient;
+import com.intuit.oauth2.config.Environment;
+import com.intuit.oauth2.config.OAuth2Config;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/** Intuit OAuth2 client, as beans so QboAuthService can be tested against a stub */
+@Configuration
+public class QboOAuthConfig {
+
+    @Bean
+    public OAuth2Config oauth2Config(QboProps props) {
+        return new OAuth2Config.OAuth2ConfigBuilder(props.getClientId(), props.getClientSecret())
+                .callDiscoveryAPI(Environment.SANDBOX)
+                .buildConfig();
+    }
+
+    @Bean
+    public OAuth2PlatformClient oauth2PlatformClient(OAuth2Config oauth2Config) {
+        return new OAuth2PlatformClient(oauth2Config);
+    }
+}
@@ -9,4 +9,19 @@ import org.springframework.context.annotation.Configuration;
 @ConfigurationProperties(prefix = "qbo")
 public class QboProps {
     private String clientId, clientSecret, redirectUri, environment, realmId, companyZoneId;
+
+    private Rate rate = new Rate();
+
+    /** per-realm QBO call budget; Intuit allows 500 req/min and 10 concurrent requests per realm */
+    @Data
+    public static class Rate {
+        private int requestsPerMinute = 450;
+        /** BatchOperation calls have their own, much smaller budget (40/min) */
+        private int batchRequestsPerMinute = 36;
+        private int burst = 20;
+        private int maxConcurrent = 8;
+        private int maxRetries = 5;
+        private long baseBackoffMs = 500;
+        private long maxBackoffMs = 30_000;
+    }
 }
@@ -0,0 +1,18 @@
+package com.zzy.domain.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/** status of a background bulk invoice create */
+public record BulkCreateJobView(
+        String jobId,
+        String state,               // QUEUED / RUNNING / SUCCEEDED / FAILED
+        Instant startedAt,          // null while queued
+        Instant finishedAt,
+        int requested,
+        int processed,              // items that have their result
+        int created,
+        int failed,
+        List<BulkCreateResult> results, // one per request item, null until the job finishes
+        String error                // set when the job as a whole failed
+) {}
@@ -0,0 +1,17 @@
+package com.zzy.domain.dto;
+
+/** outcome of one item of a bulk create; index points into the request list */
+public record BulkCreateResult(
+        int index,
+        boolean ok,
+        String qboId,
+        String error
+) {
+    public static BulkCreateResult created(int index, String qboId) {
+        return new BulkCreateResult(index, true, qboId, null);
+    }
+
+    public static BulkCreateResult failed(int index, String error) {
+        return new BulkCreateResult(index, false, null, error);
+    }
+}
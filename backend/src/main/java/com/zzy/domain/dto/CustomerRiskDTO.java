@@ -3,7 +3,8 @@ package com.zzy.domain.dto;
 import java.math.BigDecimal;
 
 public record CustomerRiskDTO(
-        String customer,            // TODO: need customer ID
+        Long customerId,            // null for invoices synced before customers were tracked
+        String customer,
         int invoices,
         BigDecimal total,
         BigDecimal overdue,
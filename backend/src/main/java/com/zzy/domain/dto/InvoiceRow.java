@@ -0,0 +1,19 @@
+package com.zzy.domain.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Read-side projection of an invoices row, selected with a JPQL constructor expression.
+ * Unlike InvoiceEntity it is never managed: no persistence-context entry, no dirty-check snapshot.
+ */
+public record InvoiceRow(
+        Long id,
+        String qboId,
+        String customerName,
+        String status,
+        BigDecimal totalAmt,
+        BigDecimal balance,
+        LocalDate txnDate,
+        LocalDate dueDate
+) {}
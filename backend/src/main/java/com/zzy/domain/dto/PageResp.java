@@ -4,12 +4,18 @@ import org.springframework.data.domain.Page;
 
 import java.util.List;
 
+/**
+ * offset pages fill every field and leave nextCursor null;
+ * keyset pages carry nextCursor (null on the last page) and no page number,
+ * and totalElements/totalPages only when the caller asked for a count.
+ */
 public record PageResp<T>(
         List<T> content,
-        long totalElements,
-        int totalPages,
+        Long totalElements,
+        Integer totalPages,
         int size,
-        int number
+        Integer number,
+        String nextCursor
 ) {
     public static <T> PageResp<T> of(Page<T> p) {
         return new PageResp<>(
@@ -17,7 +23,19 @@ public record PageResp<T>(
                 p.getTotalElements(),
                 p.getTotalPages(),
                 p.getSize(),
-                p.getNumber()
+                p.getNumber(),
+                null
+        );
+    }
+
+    public static <T> PageResp<T> keyset(List<T> content, int size, String nextCursor, Long total) {
+        return new PageResp<>(
+                content,
+                total,
+                total == null ? null : (int) ((total + size - 1) / size),
+                size,
+                null,
+                nextCursor
         );
     }
 }
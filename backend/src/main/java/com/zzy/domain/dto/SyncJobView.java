@@ -0,0 +1,22 @@
+package com.zzy.domain.dto;
+
+import java.time.Instant;
+
+/** status of a background QBO sync job */
+public record SyncJobView(
+        String jobId,
+        String realmId,
+        String mode,                // INCREMENTAL / REBUILD (effective once started)
+        boolean pipelined,
+        String state,               // RUNNING / SUCCEEDED / FAILED
+        Instant startedAt,
+        Instant finishedAt,
+        int pagesDone,
+        long rowsFetched,
+        long rowsUpserted,
+        long rowsUnchanged,
+        Integer expectedRows,       // null when QBO's count was unavailable
+        double rowsPerSecond,
+        Long etaSeconds,            // null when unknown or finished
+        String error
+) {}
@@ -0,0 +1,33 @@
+package com.zzy.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Settled invoice moved to the cold tier (invoices_archive) by InvoiceArchiver.
+ * Same columns and id as its former invoices row; written only through JDBC, read for lists and totals.
+ */
+@Entity
+@Data
+@Table(name = "invoices_archive")
+public class ArchivedInvoiceEntity {
+    @Id
+    private Long id;
+
+    @Column(name = "qbo_id", unique = true)
+    private String qboId;
+
+    @Column(name = "customer_id")
+    private Long customerId;
+
+    private String customerName;
+    private String status;
+    private BigDecimal totalAmt;
+    private BigDecimal balance;
+    private LocalDate txnDate;
+    private LocalDate dueDate;
+    private Long contentHash;
+}
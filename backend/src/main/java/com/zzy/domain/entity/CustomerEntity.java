@@ -0,0 +1,20 @@
+package com.zzy.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/** QBO customer, keyed locally by a compact numeric id that invoices reference */
+@Entity
+@Data
+@Table(name = "customers")
+public class CustomerEntity {
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** QBO Customer.Id (CustomerRef.value) */
+    @Column(name = "qbo_id", unique = true, nullable = false)
+    private String qboId;
+
+    /** latest display name seen in a CustomerRef */
+    private String name;
+}
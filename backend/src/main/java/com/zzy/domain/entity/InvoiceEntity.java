@@ -2,6 +2,8 @@ package com.zzy.domain.entity;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -16,10 +18,29 @@ public class InvoiceEntity {
     @Column(name = "qbo_id", unique = true)
     private String qboId;
 
+    /** customers.id; null on rows synced before customers were tracked, which group by name */
+    @Column(name = "customer_id")
+    private Long customerId;
+
+    /** read-only side of the customer_id foreign key, for JPQL joins */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "customer_id", insertable = false, updatable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private CustomerEntity customer;
+
+    /** QBO CustomerRef.value from mapping; the bulk writer resolves it to customerId */
+    @Transient
+    private String customerQboId;
+
+    /** display name as of the last sync, kept for legacy rows */
     private String customerName;
     private String status;
     private BigDecimal totalAmt;
     private BigDecimal balance;
     private LocalDate txnDate;
     private LocalDate dueDate;
+
+    /** hash of the synced fields; bulk sync skips rows whose hash is unchanged */
+    private Long contentHash;
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.zzy.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/** per-realm sync bookkeeping: the QBO LastUpdatedTime high-water mark */
+@Entity
+@Data
+@Table(name = "sync_state")
+public class SyncStateEntity {
+    @Id
+    @Column(name = "realm_id")
+    private String realmId;
+
+    /** invoices with MetaData.LastUpdatedTime >= watermark still need pulling */
+    private Instant watermark;
+
+    private Instant lastSyncAt;
+}
@@ -0,0 +1,4 @@
+package com.zzy.domain.event;
+
+/** published once a QBO sync has written its last page */
+public record InvoiceSyncFinishedEvent(String realmId, int upserts) {}
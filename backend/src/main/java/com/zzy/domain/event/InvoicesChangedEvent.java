@@ -0,0 +1,57 @@
+package com.zzy.domain.event;
+
+import com.zzy.domain.entity.InvoiceEntity;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Published inside the writing transaction whenever invoice rows are inserted or updated,
+ * with the before/after values of every changed row.
+ * Listeners that keep derived state should react after commit. By then the event carries the
+ * data version its transaction committed as (see OpenInvoiceSnapshots); a structure seeded
+ * from a snapshot of that version or later already holds the change and drops the delta.
+ */
+public final class InvoicesChangedEvent {
+
+    /** the columns derived state is built from */
+    public record Row(Long customerId, String customerName, String status, LocalDate dueDate,
+                      BigDecimal balance, BigDecimal totalAmt) {
+        public static Row of(InvoiceEntity e) {
+            return new Row(e.getCustomerId(), e.getCustomerName(), e.getStatus(), e.getDueDate(),
+                    e.getBalance(), e.getTotalAmt());
+        }
+    }
+
+    /** before is null for an insert */
+    public record Change(Row before, Row after) {}
+
+    private final List<Change> changes;
+    private volatile long version;
+
+    public InvoicesChangedEvent(List<Change> changes) {
+        this.changes = changes;
+    }
+
+    public static InvoicesChangedEvent inserted(InvoiceEntity e) {
+        return new InvoicesChangedEvent(List.of(new Change(null, Row.of(e))));
+    }
+
+    public List<Change> changes() {
+        return changes;
+    }
+
+    /** data version of this change; 0 until its transaction commits */
+    public long version() {
+        return version;
+    }
+
+    public void stamp(long version) {
+        this.version = version;
+    }
+
+    public int rows() {
+        return changes.size();
+    }
+}
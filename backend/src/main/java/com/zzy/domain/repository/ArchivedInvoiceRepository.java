@@ -0,0 +1,14 @@
+package com.zzy.domain.repository;
+
+import com.zzy.domain.entity.ArchivedInvoiceEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface ArchivedInvoiceRepository extends JpaRepository<ArchivedInvoiceEntity, Long> {
+
+    /** same shape as InvoiceRepository.aggregateByStatus, over the cold tier */
+    @Query("select i.status, count(i), coalesce(sum(i.balance),0) from ArchivedInvoiceEntity i group by i.status")
+    List<Object[]> aggregateByStatus();
+}
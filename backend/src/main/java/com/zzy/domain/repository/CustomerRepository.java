@@ -0,0 +1,10 @@
+package com.zzy.domain.repository;
+
+import com.zzy.domain.entity.CustomerEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface CustomerRepository extends JpaRepository<CustomerEntity, Long> {
+    Optional<CustomerEntity> findByQboId(String qboId);
+}
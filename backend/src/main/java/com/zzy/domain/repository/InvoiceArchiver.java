@@ -0,0 +1,93 @@
+package com.zzy.domain.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves invoices between the working table and invoices_archive. Settled rows (PAID or VOID with
+ * no balance) are swept out after a sync when {@code app.invoices.archive-settled} is on, so the
+ * working table only holds the open set and rows still changing. A changed archived row is moved
+ * back before the bulk writer updates it; the next sweep archives it again if it is still settled.
+ * Rows keep their id in both tiers.
+ */
+@Repository
+public class InvoiceArchiver {
+    private static final Logger log = LoggerFactory.getLogger(InvoiceArchiver.class);
+
+    /** statuses that leave the working table */
+    public static final Set<String> SETTLED = Set.of("PAID", "VOID");
+
+    private static final int CHUNK = 500;
+
+    private static final String COLUMNS =
+            "id, qbo_id, customer_id, customer_name, status, total_amt, balance, txn_date, due_date, content_hash";
+
+    private static final String SETTLED_IDS_SQL = """
+            select id from invoices
+             where status in (:settled) and coalesce(balance, 0) <= 0
+             fetch first %d rows only
+            """.formatted(CHUNK);
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final boolean enabled;
+
+    public InvoiceArchiver(NamedParameterJdbcTemplate jdbc, PlatformTransactionManager txManager,
+                           @Value("${app.invoices.archive-settled:false}") boolean enabled) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+        this.enabled = enabled;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /** whether rows with this status filter may sit in the archive */
+    public static boolean mayBeArchived(String status) {
+        return status == null || status.isBlank() || SETTLED.contains(status);
+    }
+
+    /** moves every settled row to the archive, one transaction per chunk; returns the rows moved */
+    public int archiveSettled() {
+        if (!enabled) return 0;
+        long t0 = System.nanoTime();
+        int moved = 0;
+        for (int n; (n = tx.execute(s -> archiveChunk())) > 0; ) moved += n;
+        if (moved > 0) log.info("archived {} settled invoices in {} ms", moved, (System.nanoTime() - t0) / 1_000_000);
+        return moved;
+    }
+
+    private int archiveChunk() {
+        List<Long> ids = jdbc.queryForList(SETTLED_IDS_SQL, Map.of("settled", SETTLED), Long.class);
+        return ids.isEmpty() ? 0 : move("invoices", "invoices_archive", ids);
+    }
+
+    /** moves archived rows back to the working table; runs in the caller's transaction */
+    public void restore(Collection<Long> ids) {
+        if (ids.isEmpty()) return;
+        List<Long> all = List.copyOf(ids);
+        for (int i = 0; i < all.size(); i += CHUNK) {
+            move("invoices_archive", "invoices", all.subList(i, Math.min(i + CHUNK, all.size())));
+        }
+    }
+
+    /** returns the rows actually copied, which can be fewer than ids if some already moved */
+    private int move(String from, String to, List<Long> ids) {
+        var p = Map.of("ids", ids);
+        int n = jdbc.update("insert into " + to + " (" + COLUMNS + ") select " + COLUMNS + " from " + from
+                + " where id in (:ids)", p);
+        jdbc.update("delete from " + from + " where id in (:ids)", p);
+        return n;
+    }
+}
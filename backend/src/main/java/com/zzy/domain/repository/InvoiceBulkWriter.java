@@ -0,0 +1,219 @@
+package com.zzy.domain.repository;
+
+import com.zzy.domain.entity.InvoiceEntity;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * JDBC bulk upsert for invoices keyed by qbo_id:
+ * one IN lookup per chunk resolves existing ids, hashes and current values,
+ * then new and changed rows go out as JDBC batches; unchanged rows are skipped.
+ * Runs inside the caller's transaction and publishes an {@link InvoicesChangedEvent} when rows changed.
+ * The lookup covers invoices_archive too: a changed archived row is restored and updated in place.
+ */
+@Repository
+public class InvoiceBulkWriter {
+    /** keeps IN lists and JDBC batches at a size H2 handles comfortably */
+    private static final int CHUNK = 500;
+
+    private static final String INSERT_SQL = """
+            insert into invoices (qbo_id, customer_name, status, total_amt, balance, txn_date, due_date, content_hash,
+                                  customer_id)
+            values (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String UPDATE_SQL = """
+            update invoices
+               set qbo_id = ?, customer_name = ?, status = ?, total_amt = ?, balance = ?,
+                   txn_date = ?, due_date = ?, content_hash = ?, customer_id = ?
+             where id = ?
+            """;
+
+    /** H2 upsert on the unique qbo_id; safe when a sync and a bulk create add the same customer */
+    private static final String MERGE_CUSTOMER_SQL = "merge into customers (qbo_id, name) key (qbo_id) values (?, ?)";
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final ApplicationEventPublisher events;
+    private final InvoiceArchiver archiver;
+
+    public InvoiceBulkWriter(NamedParameterJdbcTemplate jdbc, ApplicationEventPublisher events,
+                             InvoiceArchiver archiver) {
+        this.jdbc = jdbc;
+        this.events = events;
+        this.archiver = archiver;
+    }
+
+    public record UpsertResult(int inserted, int updated, int unchanged) {
+        public int upserts() { return inserted + updated; }
+    }
+
+    private record Existing(long id, Long hash, InvoicesChangedEvent.Row row, boolean archived) {}
+
+    /** rows must carry qboId; ids on the given entities are ignored */
+    public UpsertResult upsert(List<InvoiceEntity> rows) {
+        // last row wins when QBO returns the same invoice twice
+        Map<String, InvoiceEntity> byQboId = new LinkedHashMap<>();
+        for (var r : rows) {
+            if (r.getQboId() != null) byQboId.put(r.getQboId(), r);
+        }
+        if (byQboId.isEmpty()) return new UpsertResult(0, 0, 0);
+
+        resolveCustomers(byQboId.values());
+        Map<String, Existing> existing = lookup(byQboId.keySet());
+
+        List<InvoiceEntity> inserts = new ArrayList<>();
+        List<InvoiceEntity> updates = new ArrayList<>();
+        List<Long> restores = new ArrayList<>();
+        List<InvoicesChangedEvent.Change> changes = new ArrayList<>();
+        int unchanged = 0;
+        for (var r : byQboId.values()) {
+            long hash = contentHash(r);
+            r.setContentHash(hash);
+            var ex = existing.get(r.getQboId());
+            if (ex == null) {
+                inserts.add(r);
+                changes.add(new InvoicesChangedEvent.Change(null, InvoicesChangedEvent.Row.of(r)));
+            } else if (ex.hash() == null || ex.hash() != hash) {
+                r.setId(ex.id());
+                updates.add(r);
+                if (ex.archived()) restores.add(ex.id());
+                changes.add(new InvoicesChangedEvent.Change(ex.row(), InvoicesChangedEvent.Row.of(r)));
+            } else {
+                r.setId(ex.id());
+                unchanged++;
+            }
+        }
+
+        archiver.restore(restores);
+        var ops = jdbc.getJdbcOperations();
+        ops.batchUpdate(INSERT_SQL, inserts, CHUNK, InvoiceBulkWriter::bindColumns);
+        ops.batchUpdate(UPDATE_SQL, updates, CHUNK, (ps, r) -> {
+            bindColumns(ps, r);
+            ps.setLong(10, r.getId());
+        });
+        if (!changes.isEmpty()) events.publishEvent(new InvoicesChangedEvent(changes));
+        return new UpsertResult(inserts.size(), updates.size(), unchanged);
+    }
+
+    private Map<String, Existing> lookup(Collection<String> qboIds) {
+        Map<String, Existing> found = new HashMap<>(qboIds.size() * 2);
+        forEachChunk(qboIds, chunk ->
+            jdbc.query("""
+                            select id, qbo_id, content_hash, customer_id, customer_name, status, due_date, balance, total_amt,
+                                   false as archived
+                              from invoices where qbo_id in (:ids)
+                            union all
+                            select id, qbo_id, content_hash, customer_id, customer_name, status, due_date, balance, total_amt,
+                                   true
+                              from invoices_archive where qbo_id in (:ids)
+                            """,
+                    Map.of("ids", chunk),
+                    rs -> {
+                        long h = rs.getLong("content_hash");
+                        Long hash = rs.wasNull() ? null : h;
+                        Date due = rs.getDate("due_date");
+                        long cid = rs.getLong("customer_id");
+                        Long customerId = rs.wasNull() ? null : cid;
+                        var row = new InvoicesChangedEvent.Row(customerId, rs.getString("customer_name"), rs.getString("status"),
+                                due == null ? null : due.toLocalDate(),
+                                rs.getBigDecimal("balance"), rs.getBigDecimal("total_amt"));
+                        found.put(rs.getString("qbo_id"), new Existing(rs.getLong("id"), hash, row, rs.getBoolean("archived")));
+                    }));
+        return found;
+    }
+
+    /**
+     * sets customerId on every row that carries a customerQboId,
+     * adding new customers and renaming changed ones on the way
+     */
+    public void resolveCustomers(Collection<InvoiceEntity> rows) {
+        Map<String, String> names = new LinkedHashMap<>();
+        for (var r : rows) {
+            if (r.getCustomerQboId() != null) names.put(r.getCustomerQboId(), r.getCustomerName());
+        }
+        if (names.isEmpty()) return;
+
+        Map<String, Long> ids = new HashMap<>(names.size() * 2);
+        List<Object[]> merges = new ArrayList<>();
+        forEachChunk(names.keySet(), chunk ->
+                jdbc.query("select id, qbo_id, name from customers where qbo_id in (:ids)", Map.of("ids", chunk), rs -> {
+                    String qboId = rs.getString("qbo_id");
+                    ids.put(qboId, rs.getLong("id"));
+                    String name = names.get(qboId);
+                    if (name != null && !name.equals(rs.getString("name"))) merges.add(new Object[]{qboId, name});
+                }));
+        names.forEach((qboId, name) -> {
+            if (!ids.containsKey(qboId)) merges.add(new Object[]{qboId, name});
+        });
+
+        if (!merges.isEmpty()) {
+            jdbc.getJdbcOperations().batchUpdate(MERGE_CUSTOMER_SQL, merges);
+            List<String> added = merges.stream().map(m -> (String) m[0]).filter(q -> !ids.containsKey(q)).toList();
+            forEachChunk(added, chunk ->
+                    jdbc.query("select id, qbo_id from customers where qbo_id in (:ids)", Map.of("ids", chunk),
+                            rs -> { ids.put(rs.getString("qbo_id"), rs.getLong("id")); }));
+        }
+
+        for (var r : rows) {
+            if (r.getCustomerQboId() != null) r.setCustomerId(ids.get(r.getCustomerQboId()));
+        }
+    }
+
+    private static void forEachChunk(Collection<String> keys, Consumer<List<String>> action) {
+        List<String> all = new ArrayList<>(keys);
+        for (int i = 0; i < all.size(); i += CHUNK) action.accept(all.subList(i, Math.min(i + CHUNK, all.size())));
+    }
+
+    private static void bindColumns(PreparedStatement ps, InvoiceEntity r) throws SQLException {
+        ps.setString(1, r.getQboId());
+        ps.setString(2, r.getCustomerName());
+        ps.setString(3, r.getStatus());
+        ps.setBigDecimal(4, r.getTotalAmt());
+        ps.setBigDecimal(5, r.getBalance());
+        setDate(ps, 6, r.getTxnDate());
+        setDate(ps, 7, r.getDueDate());
+        ps.setLong(8, r.getContentHash());
+        if (r.getCustomerId() == null) ps.setNull(9, Types.BIGINT);
+        else ps.setLong(9, r.getCustomerId());
+    }
+
+    private static void setDate(PreparedStatement ps, int idx, LocalDate d) throws SQLException {
+        if (d == null) ps.setNull(idx, Types.DATE);
+        else ps.setDate(idx, Date.valueOf(d));
+    }
+
+    /** 64-bit FNV-1a over the synced columns; amounts are scale-normalized */
+    public static long contentHash(InvoiceEntity r) {
+        String s = String.join("\u001f",
+                String.valueOf(r.getQboId()),
+                String.valueOf(r.getCustomerQboId()),
+                String.valueOf(r.getCustomerName()),
+                String.valueOf(r.getStatus()),
+                amount(r.getTotalAmt()),
+                amount(r.getBalance()),
+                String.valueOf(r.getTxnDate()),
+                String.valueOf(r.getDueDate()));
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static String amount(BigDecimal v) {
+        return v == null ? "null" : v.stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,33 @@
+package com.zzy.domain.repository;
+
+import java.util.List;
+
+/**
+ * Optional predicates of the invoice list queries. Parts that are not set are left out of the
+ * SQL instead of being switched off with {@code :param is null or ...}, so every combination
+ * gets a plan that can use its index.
+ *
+ * @param status       exact status, null or blank for any
+ * @param customerIds  customers.id values to keep; null together with legacyNames for any customer
+ * @param legacyNames  names of rows without a customer_id to keep
+ */
+public record InvoiceFilter(String status, List<Long> customerIds, List<String> legacyNames) {
+    public static final InvoiceFilter ALL = new InvoiceFilter(null, null, null);
+
+    public boolean byStatus() {
+        return status != null && !status.isBlank();
+    }
+
+    public boolean byCustomer() {
+        return customerIds != null || legacyNames != null;
+    }
+
+    /** a customer filter that nothing can satisfy */
+    public boolean matchesNothing() {
+        return byCustomer() && isEmpty(customerIds) && isEmpty(legacyNames);
+    }
+
+    static boolean isEmpty(List<?> l) {
+        return l == null || l.isEmpty();
+    }
+}
@@ -0,0 +1,42 @@
+package com.zzy.domain.repository;
+
+import com.zzy.domain.dto.InvoiceRow;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * List reads of invoices as {@link InvoiceRow} projections, built from the active parts of an
+ * {@link InvoiceFilter}. Implemented by {@link InvoiceRowQueriesImpl} as an InvoiceRepository fragment.
+ */
+public interface InvoiceRowQueries {
+
+    /** newest first (id desc) */
+    Page<InvoiceRow> pageRows(InvoiceFilter filter, Pageable pageable);
+
+    /** keyset variant of pageRows: the next {@code limit} rows after id {@code beforeId}, no count query */
+    List<InvoiceRow> seekRows(InvoiceFilter filter, long beforeId, int limit);
+
+    long countRows(InvoiceFilter filter);
+
+    /**
+     * every row of pageRows through one JDBC cursor, fetched {@code fetchSize} rows at a time.
+     * The caller must consume and close it inside a transaction.
+     */
+    Stream<InvoiceRow> streamRows(InvoiceFilter filter);
+
+    /**
+     * overdue page: balance>0 and dueFrom <= dueDate < dueTo (dueTo <= today),
+     * oldest due date first; the filter's status is ignored
+     */
+    Page<InvoiceRow> pageOverdue(LocalDate dueFrom, LocalDate dueTo, InvoiceFilter filter, Pageable pageable);
+
+    /** keyset variant of pageOverdue: rows strictly after (afterDue, afterId) */
+    List<InvoiceRow> seekOverdue(LocalDate dueFrom, LocalDate dueTo, LocalDate afterDue, long afterId,
+                                 InvoiceFilter filter, int limit);
+
+    long countOverdue(LocalDate dueFrom, LocalDate dueTo, InvoiceFilter filter);
+}
@@ -0,0 +1,264 @@
+package com.zzy.domain.repository;
+
+import com.zzy.domain.dto.InvoiceRow;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * With archiving on, id-ordered list reads also cover invoices_archive when the status filter
+ * can match settled rows. Offset pages are cut in SQL from the union of both tiers' ids and only
+ * that page is loaded; keyset pages read each tier through its own index and merge the two
+ * id-desc runs here, and streams walk both tiers as a series of such pages so no cursor stays
+ * open. Overdue reads need a balance, so they only touch the working table.
+ */
+class InvoiceRowQueriesImpl implements InvoiceRowQueries {
+
+    private static final String HOT = "InvoiceEntity";
+    private static final String COLD = "ArchivedInvoiceEntity";
+
+    private static final String SELECT_ROW = """
+            select new com.zzy.domain.dto.InvoiceRow(i.id, i.qboId, i.customerName, i.status,
+                   i.totalAmt, i.balance, i.txnDate, i.dueDate)
+            from %s i""";
+    private static final String SELECT_COUNT = "select count(i) from %s i";
+    private static final String SELECT_ID = "select i.id as id from %s i";
+
+    private static final String NEWEST_FIRST = " order by i.id desc";
+    private static final String OLDEST_DUE_FIRST = " order by i.dueDate asc, i.id asc";
+
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    private final EntityManager em;
+    private final InvoiceArchiver archiver;
+
+    InvoiceRowQueriesImpl(EntityManager em, InvoiceArchiver archiver) {
+        this.em = em;
+        this.archiver = archiver;
+    }
+
+    @Override
+    public Page<InvoiceRow> pageRows(InvoiceFilter filter, Pageable pageable) {
+        var w = new Where().filter(filter, true);
+        int offset = (int) pageable.getOffset(), size = pageable.getPageSize();
+        List<InvoiceRow> rows;
+        if (!bothTiers(filter)) {
+            rows = w.query(em, SELECT_ROW.formatted(HOT), NEWEST_FIRST, InvoiceRow.class)
+                    .setFirstResult(offset).setMaxResults(size).getResultList();
+        } else {
+            // the database pages over the ids of both tiers; only the page's rows are loaded
+            List<Long> ids = w.create(em, "select u.id from (" + SELECT_ID.formatted(HOT) + w.clause() + " union all "
+                            + SELECT_ID.formatted(COLD) + w.clause() + ") u order by u.id desc", Long.class)
+                    .setFirstResult(offset).setMaxResults(size).getResultList();
+            rows = ids.isEmpty() ? List.of() : merge(byIds(HOT, ids), byIds(COLD, ids), 0, size);
+        }
+        return PageableExecutionUtils.getPage(rows, pageable, () -> countRows(filter));
+    }
+
+    @Override
+    public List<InvoiceRow> seekRows(InvoiceFilter filter, long beforeId, int limit) {
+        var w = new Where().filter(filter, true).and("i.id < :beforeId", "beforeId", beforeId);
+        List<InvoiceRow> hot = w.query(em, SELECT_ROW.formatted(HOT), NEWEST_FIRST, InvoiceRow.class)
+                .setMaxResults(limit).getResultList();
+        if (!bothTiers(filter)) return hot;
+        List<InvoiceRow> cold = w.query(em, SELECT_ROW.formatted(COLD), NEWEST_FIRST, InvoiceRow.class)
+                .setMaxResults(limit).getResultList();
+        return merge(hot, cold, 0, limit);
+    }
+
+    @Override
+    public long countRows(InvoiceFilter filter) {
+        var w = new Where().filter(filter, true);
+        long n = w.query(em, SELECT_COUNT.formatted(HOT), "", Long.class).getSingleResult();
+        if (bothTiers(filter)) n += w.query(em, SELECT_COUNT.formatted(COLD), "", Long.class).getSingleResult();
+        return n;
+    }
+
+    @Override
+    public Stream<InvoiceRow> streamRows(InvoiceFilter filter) {
+        if (!bothTiers(filter)) return stream(new Where().filter(filter, true), HOT);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new SeekingIterator(filter), Spliterator.ORDERED),
+                false);
+    }
+
+    private List<InvoiceRow> byIds(String entity, List<Long> ids) {
+        return new Where().and("i.id in :ids", "ids", ids)
+                .query(em, SELECT_ROW.formatted(entity), NEWEST_FIRST, InvoiceRow.class).getResultList();
+    }
+
+    private Stream<InvoiceRow> stream(Where w, String entity) {
+        return w.query(em, SELECT_ROW.formatted(entity), NEWEST_FIRST, InvoiceRow.class)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                .getResultStream();
+    }
+
+    private boolean bothTiers(InvoiceFilter filter) {
+        return archiver.enabled() && InvoiceArchiver.mayBeArchived(filter.status());
+    }
+
+    /** rows [from, from+size) of two id-desc lists merged */
+    private static List<InvoiceRow> merge(List<InvoiceRow> a, List<InvoiceRow> b, int from, int size) {
+        List<InvoiceRow> out = new ArrayList<>(size);
+        var it = new MergingIterator(a.iterator(), b.iterator());
+        for (int k = 0; it.hasNext() && out.size() < size; k++) {
+            InvoiceRow r = it.next();
+            if (k >= from) out.add(r);
+        }
+        return out;
+    }
+
+    /** both tiers id-desc, one keyset page at a time; each page is read in full before it is handed out */
+    private final class SeekingIterator implements Iterator<InvoiceRow> {
+        private final InvoiceFilter filter;
+        private Iterator<InvoiceRow> page = Collections.emptyIterator();
+        private long beforeId = Long.MAX_VALUE;
+        private boolean last;
+
+        SeekingIterator(InvoiceFilter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!page.hasNext() && !last) {
+                List<InvoiceRow> rows = seekRows(filter, beforeId, STREAM_FETCH_SIZE);
+                last = rows.size() < STREAM_FETCH_SIZE;
+                if (!rows.isEmpty()) beforeId = rows.get(rows.size() - 1).id();
+                page = rows.iterator();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public InvoiceRow next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return page.next();
+        }
+    }
+
+    /** merges two id-desc iterators into one */
+    private static final class MergingIterator implements Iterator<InvoiceRow> {
+        private final Iterator<InvoiceRow> a, b;
+        private InvoiceRow nextA, nextB;
+
+        MergingIterator(Iterator<InvoiceRow> a, Iterator<InvoiceRow> b) {
+            this.a = a;
+            this.b = b;
+            nextA = a.hasNext() ? a.next() : null;
+            nextB = b.hasNext() ? b.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextA != null || nextB != null;
+        }
+
+        @Override
+        public InvoiceRow next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            InvoiceRow r;
+            if (nextB == null || (nextA != null && nextA.id() > nextB.id())) {
+                r = nextA;
+                nextA = a.hasNext() ? a.next() : null;
+            } else {
+                r = nextB;
+                nextB = b.hasNext() ? b.next() : null;
+            }
+            return r;
+        }
+    }
+
+    @Override
+    public Page<InvoiceRow> pageOverdue(LocalDate dueFrom, LocalDate dueTo, InvoiceFilter filter, Pageable pageable) {
+        List<InvoiceRow> rows = overdue(dueFrom, dueTo, filter)
+                .query(em, SELECT_ROW.formatted(HOT), OLDEST_DUE_FIRST, InvoiceRow.class)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        return PageableExecutionUtils.getPage(rows, pageable, () -> countOverdue(dueFrom, dueTo, filter));
+    }
+
+    @Override
+    public List<InvoiceRow> seekOverdue(LocalDate dueFrom, LocalDate dueTo, LocalDate afterDue, long afterId,
+                                        InvoiceFilter filter, int limit) {
+        var w = overdue(dueFrom, dueTo, filter)
+                .and("(i.dueDate > :afterDue or (i.dueDate = :afterDue and i.id > :afterId))",
+                        "afterDue", afterDue, "afterId", afterId);
+        return w.query(em, SELECT_ROW.formatted(HOT), OLDEST_DUE_FIRST, InvoiceRow.class)
+                .setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public long countOverdue(LocalDate dueFrom, LocalDate dueTo, InvoiceFilter filter) {
+        return overdue(dueFrom, dueTo, filter).query(em, SELECT_COUNT.formatted(HOT), "", Long.class).getSingleResult();
+    }
+
+    private static Where overdue(LocalDate dueFrom, LocalDate dueTo, InvoiceFilter filter) {
+        return new Where()
+                .and("i.balance > 0")
+                .and("i.dueDate >= :dueFrom and i.dueDate < :dueTo", "dueFrom", dueFrom, "dueTo", dueTo)
+                .filter(filter, false);
+    }
+
+    /** where clause and its parameters, from only the predicates in use */
+    private static final class Where {
+        private final StringBuilder jpql = new StringBuilder();
+        private final Map<String, Object> params = new HashMap<>();
+
+        /** nameValues: alternating parameter name and value */
+        Where and(String predicate, Object... nameValues) {
+            jpql.append(jpql.isEmpty() ? " where " : " and ").append(predicate);
+            for (int k = 0; k < nameValues.length; k += 2) params.put((String) nameValues[k], nameValues[k + 1]);
+            return this;
+        }
+
+        Where filter(InvoiceFilter f, boolean withStatus) {
+            if (withStatus && f.byStatus()) and("i.status = :status", "status", f.status());
+            if (!f.byCustomer()) return this;
+
+            boolean ids = !InvoiceFilter.isEmpty(f.customerIds());
+            boolean legacy = !InvoiceFilter.isEmpty(f.legacyNames());
+            if (ids && legacy) {
+                // only while legacy rows remain; the OR of two indexes reads as a scan
+                return and("(i.customerId in :customerIds or (i.customerId is null and i.customerName in :legacyNames))",
+                        "customerIds", f.customerIds(), "legacyNames", f.legacyNames());
+            }
+            if (ids) return and("i.customerId in :customerIds", "customerIds", f.customerIds());
+            if (legacy) {
+                return and("i.customerId is null and i.customerName in :legacyNames", "legacyNames", f.legacyNames());
+            }
+            return and("1 = 0"); // callers normally short-circuit on matchesNothing()
+        }
+
+        String clause() {
+            return jpql.toString();
+        }
+
+        <T> TypedQuery<T> query(EntityManager em, String select, String orderBy, Class<T> type) {
+            return create(em, select + jpql + orderBy, type);
+        }
+
+        /** a query whose text already holds {@link #clause()}, possibly more than once */
+        <T> TypedQuery<T> create(EntityManager em, String ql, Class<T> type) {
+            TypedQuery<T> q = em.createQuery(ql, type);
+            params.forEach(q::setParameter);
+            return q;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.zzy.domain.repository;
+
+import com.zzy.domain.entity.SyncStateEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface SyncStateRepository extends JpaRepository<SyncStateEntity, String> {
+}
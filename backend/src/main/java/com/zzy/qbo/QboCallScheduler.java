@@ -0,0 +1,245 @@
+package com.zzy.qbo;
+
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.exception.InternalServiceException;
+import com.intuit.ipp.exception.ServiceUnavailableException;
+import com.intuit.ipp.services.DataService;
+import com.zzy.auth.TokenStore;
+import com.zzy.config.QboProps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single gate for every QBO DataService call.
+ * Each realm gets a token bucket (rate) and a semaphore (concurrency);
+ * throttled and transient failures are retried with full-jitter exponential backoff,
+ * and a throttle halves the realm's rate, which then creeps back up on success.
+ */
+@Component
+public class QboCallScheduler {
+    private static final Logger log = LoggerFactory.getLogger(QboCallScheduler.class);
+
+    @FunctionalInterface
+    public interface QboCall<T> {
+        T apply(DataService ds) throws Exception;
+    }
+
+    private static final Set<String> THROTTLE_CODES = Set.of("3001", "3003", "429");
+    private static final Set<String> TRANSIENT_CODES = Set.of("500", "502", "503", "504");
+
+    private final QboDataServiceFactory factory;
+    private final TokenStore store;
+    private final QboProps.Rate rate;
+    private final Map<String, RealmLimiter> limiters = new ConcurrentHashMap<>();
+
+    public QboCallScheduler(QboDataServiceFactory factory, TokenStore store, QboProps props) {
+        this.factory = factory;
+        this.store = store;
+        this.rate = props.getRate();
+    }
+
+    /** idempotent call (queries): retried on throttling and on transient failures */
+    public <T> T call(QboCall<T> call) throws Exception {
+        return run(call, true, false);
+    }
+
+    /** non-idempotent call (creates): only retried when QBO throttled it, i.e. it was never applied */
+    public <T> T callWrite(QboCall<T> call) throws Exception {
+        return run(call, false, false);
+    }
+
+    /** non-idempotent batch call; also draws on the realm's separate batch-request budget */
+    public <T> T callBatch(QboCall<T> call) throws Exception {
+        return run(call, false, true);
+    }
+
+    private <T> T run(QboCall<T> call, boolean idempotent, boolean batch) throws Exception {
+        String realmId = store.getRealmId();
+        RealmLimiter limiter = limiters.computeIfAbsent(String.valueOf(realmId), k -> new RealmLimiter());
+
+        for (int attempt = 0; ; attempt++) {
+            long queuedAt = System.nanoTime();
+            long delay = limiter.requests.reserve();
+            if (batch) delay = Math.max(delay, limiter.batches.reserve());
+            if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+            limiter.permits.acquire();
+            limiter.recordWait(System.nanoTime() - queuedAt);
+
+            Exception failure;
+            try {
+                T result = call.apply(factory.get());
+                limiter.requests.onSuccess();
+                if (batch) limiter.batches.onSuccess();
+                return result;
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                limiter.permits.release();
+            }
+
+            boolean throttled = isThrottle(failure);
+            boolean retryable = throttled || (idempotent && isTransient(failure));
+            if (!retryable || attempt >= rate.getMaxRetries()) throw failure;
+
+            if (throttled) {
+                limiter.throttles.incrementAndGet();
+                (batch ? limiter.batches : limiter.requests).onThrottle();
+            } else {
+                limiter.transientErrors.incrementAndGet();
+            }
+            limiter.retries.incrementAndGet();
+            long backoff = backoffMs(attempt);
+            log.warn("QBO call {} (realm={}, attempt {}), retrying in {} ms: {}",
+                    throttled ? "throttled" : "failed", realmId, attempt + 1, backoff, failure.getMessage());
+            Thread.sleep(backoff);
+        }
+    }
+
+    /** full jitter: uniform in [0, min(max, base * 2^attempt)] */
+    private long backoffMs(int attempt) {
+        long cap = Math.min(rate.getMaxBackoffMs(), rate.getBaseBackoffMs() << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * by QBO error code only (ThrottleExceeded 3001, 3003, or the HTTP status 429 as the code),
+     * never by message text: a message can quote an invoice number or amount that contains "429"
+     */
+    static boolean isThrottle(Throwable e) {
+        return hasCode(e, THROTTLE_CODES);
+    }
+
+    /** by exception type or the HTTP status as the error code; like isThrottle, never by message text */
+    static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ServiceUnavailableException || t instanceof InternalServiceException
+                    || t instanceof IOException) return true; // SocketTimeoutException is an IOException
+        }
+        return hasCode(e, TRANSIENT_CODES);
+    }
+
+    private static boolean hasCode(Throwable e, Set<String> codes) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof FMSException f && f.getErrorList() != null) {
+                for (var err : f.getErrorList()) {
+                    String c = normalizeCode(err.getCode());
+                    if (c != null && codes.contains(c)) return true; // Set.of rejects a null lookup
+                }
+            }
+        }
+        return false;
+    }
+
+    /** codes sometimes arrive zero-padded ("003001") */
+    static String normalizeCode(String code) {
+        if (code == null) return null;
+        String c = code.trim();
+        int i = 0;
+        while (i < c.length() - 1 && c.charAt(i) == '0') i++;
+        return c.substring(i);
+    }
+
+    /** per-realm counters for /api/admin/qbo-calls */
+    public Map<String, Object> stats() {
+        Map<String, Object> res = new LinkedHashMap<>();
+        limiters.forEach((realm, l) -> res.put(realm, l.stats()));
+        return res;
+    }
+
+    private final class RealmLimiter {
+        final TokenBucket requests = new TokenBucket(rate.getRequestsPerMinute(), rate.getBurst());
+        final TokenBucket batches = new TokenBucket(rate.getBatchRequestsPerMinute(), 1);
+        final Semaphore permits = new Semaphore(rate.getMaxConcurrent(), true);
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong waitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final AtomicLong throttles = new AtomicLong();
+        final AtomicLong transientErrors = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+
+        void recordWait(long nanos) {
+            calls.incrementAndGet();
+            waitNanos.addAndGet(nanos);
+            maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        Map<String, Object> stats() {
+            long n = calls.get();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("calls", n);
+            m.put("inFlight", rate.getMaxConcurrent() - permits.availablePermits());
+            m.put("queued", permits.getQueueLength());
+            m.put("avgQueueWaitMs", n == 0 ? 0.0 : waitNanos.get() / 1e6 / n);
+            m.put("maxQueueWaitMs", maxWaitNanos.get() / 1e6);
+            m.put("throttled", throttles.get());
+            m.put("transientErrors", transientErrors.get());
+            m.put("retries", retries.get());
+            m.put("ratePerMinute", Math.round(requests.currentRatePerMinute()));
+            m.put("batchRatePerMinute", Math.round(batches.currentRatePerMinute()));
+            return m;
+        }
+    }
+
+    /** token bucket whose rate halves on throttle and recovers additively on success */
+    static final class TokenBucket {
+        private final double maxRatePerNano;
+        private final double burst;
+        // guarded by this
+        private double ratePerNano;
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(int perMinute, int burst) {
+            this(perMinute, burst, System.nanoTime());
+        }
+
+        /** {@code now} starts the bucket's clock; tests then pass their own times to reserve */
+        TokenBucket(int perMinute, int burst, long now) {
+            this.maxRatePerNano = perMinute / 60e9;
+            this.ratePerNano = maxRatePerNano;
+            this.burst = burst;
+            this.tokens = burst;
+            this.refilledAt = now;
+        }
+
+        synchronized long reserve() {
+            return reserve(System.nanoTime()); // read under the lock, so the clock never runs backwards here
+        }
+
+        /**
+         * takes one token, letting the balance go negative;
+         * returns how long the caller must wait for its token to exist
+         */
+        synchronized long reserve(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens / ratePerNano);
+        }
+
+        synchronized void onThrottle() {
+            ratePerNano = Math.max(maxRatePerNano / 16, ratePerNano / 2);
+            tokens = Math.min(tokens, 0);
+        }
+
+        /** back to the full rate after ~20 successful calls */
+        synchronized void onSuccess() {
+            ratePerNano = Math.min(maxRatePerNano, ratePerNano + maxRatePerNano / 20);
+        }
+
+        synchronized double currentRatePerMinute() {
+            return ratePerNano * 60e9;
+        }
+    }
+}
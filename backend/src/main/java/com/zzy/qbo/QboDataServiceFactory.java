@@ -2,6 +2,7 @@ package com.zzy.qbo;
 
 import com.zzy.auth.QboAuthService;
 import com.zzy.auth.TokenStore;
+import com.zzy.config.QboProps;
 import com.intuit.ipp.core.Context;
 import com.intuit.ipp.core.ServiceType;
 import com.intuit.ipp.security.OAuth2Authorizer;
@@ -9,20 +10,50 @@ import com.intuit.ipp.services.DataService;
 import org.springframework.stereotype.Component;
 import com.intuit.ipp.util.Config;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out one cached DataService per realm.
+ * The Context/authorizer/DataService trio is only rebuilt when the access token rotates.
+ */
 @Component
 public class QboDataServiceFactory {
     private final TokenStore store;
     private final QboAuthService auth;
+    private final String baseUrl;
+
+    private record Client(String accessToken, DataService ds) {}
+
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
 
-    public QboDataServiceFactory(TokenStore store, QboAuthService auth) {
+    /** the SDK keeps Config per (inheritable) thread, so the base URL is set once per thread */
+    private final ThreadLocal<Boolean> configured = ThreadLocal.withInitial(() -> false);
+
+    public QboDataServiceFactory(TokenStore store, QboAuthService auth, QboProps props) {
         this.store = store; this.auth = auth;
+        String host = "PRODUCTION".equalsIgnoreCase(props.getEnvironment())
+                ? "https://quickbooks.api.intuit.com"
+                : "https://sandbox-quickbooks.api.intuit.com";
+        this.baseUrl = host + "/v3/company";
     }
 
     public DataService get() throws Exception {
-        String url = "https://sandbox-quickbooks.api.intuit.com" + "/v3/company";  // TODO: tobe configuration
-        Config.setProperty(Config.BASE_URL_QBO, url);
+        if (!configured.get()) {
+            Config.setProperty(Config.BASE_URL_QBO, baseUrl);
+            configured.set(true);
+        }
         auth.refreshIfNeeded();
-        var ctx = new Context(new OAuth2Authorizer(store.getAccessToken()), ServiceType.QBO, store.getRealmId());
-        return new DataService(ctx);
+
+        var tokens = store.snapshot();
+        String realmId = tokens.realmId();
+        String token = tokens.accessToken();
+        Client c = clients.get(realmId);
+        if (c == null || !c.accessToken().equals(token)) {
+            var ctx = new Context(new OAuth2Authorizer(token), ServiceType.QBO, realmId);
+            c = new Client(token, new DataService(ctx));
+            clients.put(realmId, c);
+        }
+        return c.ds();
     }
 }
@@ -0,0 +1,147 @@
+package com.zzy.qbo;
+
+import com.intuit.ipp.data.Customer;
+import com.intuit.ipp.data.Item;
+import com.intuit.ipp.data.ReferenceType;
+import com.intuit.ipp.exception.FMSException;
+import com.zzy.auth.TokenStore;
+import com.zzy.cache.BoundedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.zzy.qbo.InvoiceHelper.esc;
+
+/**
+ * Per-realm cache of Customer (by DisplayName) and service Item (by Name) references,
+ * so creating an invoice costs one QBO call instead of three.
+ * A blank name maps to the first active record, as before.
+ */
+@Component
+public class QboReferenceCache {
+    private static final Logger log = LoggerFactory.getLogger(QboReferenceCache.class);
+
+    private static final int PRELOAD_PAGE = 1000;
+
+    public enum Kind { CUSTOMER, ITEM }
+
+    private record Key(String realmId, Kind kind, String name) {}
+
+    private final QboCallScheduler qbo;
+    private final TokenStore store;
+    private final BoundedCache<Key, ReferenceType> cache =
+            new BoundedCache<>("qbo-refs", 20_000, Duration.ofMinutes(30));
+
+    public QboReferenceCache(QboCallScheduler qbo, TokenStore store) {
+        this.qbo = qbo;
+        this.store = store;
+    }
+
+    public ReferenceType customer(String displayName) throws Exception {
+        return cache.get(key(Kind.CUSTOMER, displayName), this::load);
+    }
+
+    public ReferenceType item(String name) throws Exception {
+        return cache.get(key(Kind.ITEM, name), this::load);
+    }
+
+    /** drop one entry, e.g. after QBO rejected it as a stale reference */
+    public void invalidate(Kind kind, String name) {
+        cache.invalidate(key(kind, name));
+    }
+
+    /** pulls every active customer and service item of the realm into the cache */
+    public Map<String, Object> preload() throws Exception {
+        String realmId = store.getRealmId();
+        int customers = 0, items = 0;
+        for (int start = 1; ; start += PRELOAD_PAGE) {
+            String q = "select Id, DisplayName from Customer where Active=true"
+                    + " startposition " + start + " maxresults " + PRELOAD_PAGE;
+            var qr = qbo.call(ds -> ds.executeQuery(q));
+            for (var e : qr.getEntities()) {
+                Customer c = (Customer) e;
+                cache.put(new Key(realmId, Kind.CUSTOMER, c.getDisplayName()), ref(c.getId(), c.getDisplayName()));
+                customers++;
+            }
+            if (qr.getEntities().size() < PRELOAD_PAGE) break;
+        }
+        for (int start = 1; ; start += PRELOAD_PAGE) {
+            String q = "select Id, Name from Item where Active=true and Type='Service'"
+                    + " startposition " + start + " maxresults " + PRELOAD_PAGE;
+            var qr = qbo.call(ds -> ds.executeQuery(q));
+            for (var e : qr.getEntities()) {
+                Item it = (Item) e;
+                cache.put(new Key(realmId, Kind.ITEM, it.getName()), ref(it.getId(), it.getName()));
+                items++;
+            }
+            if (qr.getEntities().size() < PRELOAD_PAGE) break;
+        }
+        log.info("QBO reference cache preloaded: realm={}, customers={}, items={}", realmId, customers, items);
+
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("customers", customers);
+        res.put("items", items);
+        res.put("cache", cache.stats());
+        return res;
+    }
+
+    public Map<String, Object> stats() {
+        return cache.stats();
+    }
+
+    private Key key(Kind kind, String name) {
+        return new Key(store.getRealmId(), kind, name == null || name.isBlank() ? "" : name);
+    }
+
+    /** not-found is thrown, never cached, so the next lookup asks QBO again */
+    private ReferenceType load(Key k) throws Exception {
+        boolean any = k.name().isEmpty();
+        if (k.kind() == Kind.CUSTOMER) {
+            String q = !any
+                    ? "select Id, DisplayName from Customer where Active=true and DisplayName='"+esc(k.name())+"'"
+                    : "select Id, DisplayName from Customer where Active=true startposition 1 maxresults 1";
+            var qr = qbo.call(ds -> ds.executeQuery(q));
+            if (!qr.getEntities().isEmpty()) {
+                Customer c = (Customer) qr.getEntities().getFirst();
+                return ref(c.getId(), c.getDisplayName());
+            }
+            throw new FMSException("No active customer found");
+        }
+        String q = !any
+                ? "select Id, Name from Item where Active=true and Name='"+esc(k.name())+"' and Type='Service'"
+                : "select Id, Name from Item where Active=true and Type='Service' startposition 1 maxresults 1";
+        var qr = qbo.call(ds -> ds.executeQuery(q));
+        if (!qr.getEntities().isEmpty()) {
+            Item it = (Item) qr.getEntities().getFirst();
+            return ref(it.getId(), it.getName());
+        }
+        throw new FMSException("No active service item found");
+    }
+
+    private static ReferenceType ref(String id, String name) {
+        ReferenceType r = new ReferenceType();
+        r.setValue(id);
+        r.setName(name);
+        return r;
+    }
+
+    /** QBO's answer when a cached Id no longer points at an active record */
+    public static boolean isStaleReference(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof FMSException f && f.getErrorList() != null) {
+                for (var err : f.getErrorList()) {
+                    if ("610".equals(err.getCode()) || "2500".equals(err.getCode())) return true;
+                }
+            }
+            String m = Objects.toString(t.getMessage(), "");
+            if (m.contains("Object Not Found") || m.contains("Invalid Reference Id")
+                    || m.contains("made inactive")) return true;
+        }
+        return false;
+    }
+}
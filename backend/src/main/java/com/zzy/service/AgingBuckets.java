@@ -0,0 +1,56 @@
+package com.zzy.service;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Aging bucket labels and the due-date ranges they cover on a given day.
+ * overdue days = today - dueDate, so "0-7" is really 1..7 days (dueDate &lt; today).
+ */
+public final class AgingBuckets {
+    public static final String NOT_OVERDUE = "NOT_OVERDUE";
+
+    /** overdue buckets, youngest first */
+    public static final List<String> OVERDUE = List.of("0-7", "8-30", "31-60", "61-90", ">90");
+
+    /** every label in display order */
+    public static final List<String> ALL = List.of(NOT_OVERDUE, "0-7", "8-30", "31-60", "61-90", ">90");
+
+    /** upper bound (inclusive, in overdue days) of each OVERDUE bucket; the last one is open */
+    private static final int[] MAX_DAYS = {7, 30, 60, 90};
+
+    /** lower bound for "no lower bound" date predicates */
+    public static final LocalDate MIN_DUE = LocalDate.of(1, 1, 1);
+
+    /** half-open due-date range [from, to) */
+    public record DueRange(LocalDate from, LocalDate to) {}
+
+    private AgingBuckets() {}
+
+    public static String bucketOf(long overdueDays) {
+        return ALL.get(Math.max(1, indexOf(overdueDays)));
+    }
+
+    /** position in ALL: 0 (NOT_OVERDUE) for overdueDays <= 0, else the overdue bucket */
+    public static int indexOf(long overdueDays) {
+        if (overdueDays <= 0) return 0;
+        for (int i = 0; i < MAX_DAYS.length; i++) {
+            if (overdueDays <= MAX_DAYS[i]) return i + 1;
+        }
+        return MAX_DAYS.length + 1;
+    }
+
+    /** every overdue due date: [MIN, today) */
+    public static DueRange overdue(LocalDate today) {
+        return new DueRange(MIN_DUE, today);
+    }
+
+    /** due dates that land in {@code bucket} on {@code today}; null for an unknown label */
+    public static DueRange dueRange(String bucket, LocalDate today) {
+        int i = OVERDUE.indexOf(bucket);
+        if (i < 0) return null;
+        LocalDate to = i == 0 ? today : today.minusDays(MAX_DAYS[i - 1]);
+        LocalDate from = i == MAX_DAYS.length ? MIN_DUE : today.minusDays(MAX_DAYS[i]);
+        return new DueRange(from, to);
+    }
+}
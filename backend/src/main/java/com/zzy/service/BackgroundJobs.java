@@ -0,0 +1,94 @@
+package com.zzy.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Pool and status registry behind the background job services. Jobs wait in a bounded queue for
+ * a fixed set of daemon threads, and a submit past the bound is rejected rather than piling up.
+ * The last {@link #HISTORY} finished jobs stay findable for status polling.
+ */
+final class BackgroundJobs<J extends BackgroundJobs.Job> {
+    private static final Logger log = LoggerFactory.getLogger(BackgroundJobs.class);
+
+    /** finished jobs kept around for status polling */
+    static final int HISTORY = 50;
+
+    interface Job {
+        String id();
+
+        boolean finished();
+    }
+
+    @FunctionalInterface
+    interface Work {
+        void run() throws Exception;
+    }
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+
+    // guarded by this
+    private final Map<String, J> jobs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, J> eldest) {
+            return size() > HISTORY && eldest.getValue().finished();
+        }
+    };
+
+    /** name: used in log lines, and with a sequence number as the thread name */
+    BackgroundJobs(String name, int threads, int queueCapacity) {
+        this.name = name;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * queues the job's work; {@code onDone} gets the failure message, or null, however the work ends.
+     * @throws RejectedExecutionException when the queue is full
+     */
+    synchronized void submit(J job, Work work, Consumer<String> onDone) {
+        try {
+            executor.execute(() -> run(job, work, onDone));
+        } catch (RejectedExecutionException e) {
+            throw new RejectedExecutionException("The " + name + " queue is full; retry later.", e);
+        }
+        jobs.put(job.id(), job);
+    }
+
+    synchronized Optional<J> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void run(J job, Work work, Consumer<String> onDone) {
+        String error = null;
+        try {
+            work.run();
+        } catch (Throwable e) {
+            log.error("{} {} failed: {}", name, job.id(), e.getMessage(), e);
+            error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            if (e instanceof Error err) throw err; // after the finally below has closed the job
+        } finally {
+            onDone.accept(error);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,97 @@
+package com.zzy.service;
+
+import com.zzy.domain.dto.BulkCreateJobView;
+import com.zzy.domain.dto.BulkCreateResult;
+import com.zzy.domain.dto.CreateInvoiceReq;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs bulk invoice creates as background jobs so the request thread returns at once instead of
+ * waiting out every QBO batch. Jobs run one at a time, since each already keeps several batches
+ * in flight against the shared QBO budget; later submits queue behind it, a few deep.
+ */
+@Service
+public class BulkCreateJobService {
+    /** jobs waiting behind the running one; a submit past that is rejected */
+    static final int QUEUE = 4;
+
+    private final InvoiceCreateService createSvc;
+    private final BackgroundJobs<BulkCreateJob> jobs = new BackgroundJobs<>("qbo-bulk-create-job", 1, QUEUE);
+
+    public BulkCreateJobService(InvoiceCreateService createSvc) {
+        this.createSvc = createSvc;
+    }
+
+    /** @throws java.util.concurrent.RejectedExecutionException when {@link #QUEUE} jobs are already waiting */
+    public BulkCreateJobView submit(List<CreateInvoiceReq> reqs) {
+        var job = new BulkCreateJob(UUID.randomUUID().toString(), reqs.size());
+        jobs.submit(job, () -> {
+            job.startedAt = Instant.now();
+            job.results = createSvc.createAll(reqs, job);
+        }, job::finish);
+        return job.view();
+    }
+
+    public Optional<BulkCreateJobView> find(String jobId) {
+        return jobs.find(jobId).map(BulkCreateJob::view);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobs.shutdown();
+    }
+
+    /** progress is written by the create's batch threads and read by status requests */
+    private static final class BulkCreateJob implements InvoiceCreateService.BulkCreateListener, BackgroundJobs.Job {
+        final String id;
+        final int requested;
+        final AtomicInteger processed = new AtomicInteger(), created = new AtomicInteger();
+        volatile Instant startedAt;
+        volatile Instant finishedAt;
+        volatile List<BulkCreateResult> results;
+        volatile String error;
+
+        BulkCreateJob(String id, int requested) {
+            this.id = id;
+            this.requested = requested;
+        }
+
+        @Override
+        public void onItems(int items, int createdItems) {
+            processed.addAndGet(items);
+            created.addAndGet(createdItems);
+        }
+
+        void finish(String err) {
+            error = err;
+            finishedAt = Instant.now();
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public boolean finished() {
+            return finishedAt != null;
+        }
+
+        BulkCreateJobView view() {
+            Instant end = finishedAt;
+            String state = startedAt == null ? "QUEUED"
+                    : end == null ? "RUNNING"
+                    : error == null ? "SUCCEEDED" : "FAILED";
+            int done = processed.get(), ok = created.get();
+            return new BulkCreateJobView(id, state, startedAt, end, requested, done, ok, done - ok,
+                    results, error);
+        }
+    }
+}
@@ -1,29 +1,69 @@
 package com.zzy.service;
 
 import com.intuit.ipp.data.*;
-import com.intuit.ipp.exception.FMSException;
-import com.intuit.ipp.services.DataService;
+import com.intuit.ipp.services.BatchOperation;
+import com.zzy.domain.dto.BulkCreateResult;
 import com.zzy.domain.dto.CreateInvoiceReq;
 import com.zzy.domain.entity.InvoiceEntity;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import com.zzy.domain.repository.InvoiceBulkWriter;
 import com.zzy.domain.repository.InvoiceRepository;
-import com.zzy.qbo.QboDataServiceFactory;
+import com.zzy.qbo.QboCallScheduler;
+import com.zzy.qbo.QboReferenceCache;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static com.zzy.qbo.InvoiceHelper.*;
 
-//not use here since don't sync invoice to sandbox
 @Service
 public class InvoiceCreateService {
+    private static final Logger log = LoggerFactory.getLogger(InvoiceCreateService.class);
 
-    private final QboDataServiceFactory factory;
+    /** QBO accepts at most 30 operations per BatchOperation */
+    private static final int BATCH_SIZE = 30;
+    /** batches in flight at once; the scheduler's batch budget still paces them */
+    private static final int BATCH_PARALLELISM = 4;
+
+    private final QboCallScheduler qbo;
+    private final QboReferenceCache refs;
     private final InvoiceRepository repo;
+    private final InvoiceBulkWriter writer;
+    private final TransactionTemplate tx;
+    private final ApplicationEventPublisher events;
+    private final ExecutorService batchPool;
 
-    public InvoiceCreateService(QboDataServiceFactory factory, InvoiceRepository repo) {
-        this.factory = factory;
+    public InvoiceCreateService(QboCallScheduler qbo, QboReferenceCache refs, InvoiceRepository repo,
+                                InvoiceBulkWriter writer, PlatformTransactionManager txManager,
+                                ApplicationEventPublisher events) {
+        this.qbo = qbo;
+        this.refs = refs;
         this.repo = repo;
+        this.writer = writer;
+        this.events = events;
+        this.tx = new TransactionTemplate(txManager);
+        AtomicInteger seq = new AtomicInteger();
+        this.batchPool = Executors.newFixedThreadPool(BATCH_PARALLELISM, r -> {
+            Thread t = new Thread(r, "qbo-batch-create-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     @Transactional
@@ -32,51 +72,134 @@ public class InvoiceCreateService {
             throw new IllegalArgumentException("amount must be > 0");
         }
 
-        DataService ds = factory.get();
-        ReferenceType custRef = resolveCustomerRef(ds, req.customerName);
-        ReferenceType itemRef = resolveItemRef(ds, req.itemName);
-
-        Invoice inv = buildInvoice(custRef, itemRef, req.amount, req.daysUntilDue, req.note);
-        Invoice created = ds.add(inv);
+        Invoice created;
+        try {
+            created = add(req);
+        } catch (Exception ex) {
+            if (!QboReferenceCache.isStaleReference(ex)) throw ex;
+            // cached Id went stale (deleted/inactive): drop both refs and resolve fresh once
+            refs.invalidate(QboReferenceCache.Kind.CUSTOMER, req.customerName);
+            refs.invalidate(QboReferenceCache.Kind.ITEM, req.itemName);
+            created = add(req);
+        }
 
         InvoiceEntity e = new InvoiceEntity();
         e.setQboId(created.getId());
+        e.setCustomerQboId(created.getCustomerRef() == null ? null : created.getCustomerRef().getValue());
         e.setCustomerName(created.getCustomerRef() == null ? null : created.getCustomerRef().getName());
         e.setTotalAmt(created.getTotalAmt() != null ? created.getTotalAmt() : req.amount);
         e.setBalance(created.getBalance()  != null ? created.getBalance()  : req.amount);
         e.setTxnDate(toLocalDate(created.getTxnDate()));
         e.setDueDate(toLocalDate(created.getDueDate()));
         e.setStatus("OPEN");
-        return repo.save(e);
+        writer.resolveCustomers(List.of(e));
+        e = repo.save(e);
+        events.publishEvent(InvoicesChangedEvent.inserted(e));
+        return e;
+    }
+
+    /** refs come from the cache, so a warm create is a single QBO call */
+    private Invoice add(CreateInvoiceReq req) throws Exception {
+        ReferenceType custRef = refs.customer(req.customerName);
+        ReferenceType itemRef = refs.item(req.itemName);
+        Invoice inv = buildInvoice(custRef, itemRef, req.amount, req.daysUntilDue, req.note);
+        return qbo.callWrite(ds -> ds.add(inv));
+    }
+
+    /** progress of a bulk create; called from the batch threads */
+    public interface BulkCreateListener {
+        BulkCreateListener NONE = new BulkCreateListener() {};
+
+        /** items is how many request items just got their result, created how many of them succeeded */
+        default void onItems(int items, int created) {}
     }
 
-    private ReferenceType resolveCustomerRef(DataService ds, String name) throws FMSException {
-        String q = (name != null && !name.isBlank())
-                ? "select Id, DisplayName from Customer where Active=true and DisplayName='"+esc(name)+"'"
-                : "select Id, DisplayName from Customer where Active=true startposition 1 maxresults 1";
-        var qr = ds.executeQuery(q);
-        if (!qr.getEntities().isEmpty()) {
-            Customer c = (Customer) qr.getEntities().getFirst();
-            ReferenceType r = new ReferenceType();
-            r.setValue(c.getId());
-            r.setName(c.getDisplayName());
-            return r;
+    /**
+     * creates many invoices through QBO BatchOperation (30 per batch, a few batches in parallel)
+     * and stores the created ones locally in one batched write.
+     * every request item gets its own result; one bad item never fails the others.
+     */
+    public List<BulkCreateResult> createAll(List<CreateInvoiceReq> reqs, BulkCreateListener listener) throws Exception {
+        int n = reqs.size();
+        BulkCreateResult[] results = new BulkCreateResult[n];
+        Invoice[] invoices = new Invoice[n];
+        InvoiceEntity[] rows = new InvoiceEntity[n];
+
+        List<Integer> ready = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            CreateInvoiceReq req = reqs.get(i);
+            if (req == null || req.amount == null || req.amount.compareTo(BigDecimal.ZERO) <= 0) {
+                results[i] = BulkCreateResult.failed(i, "amount must be > 0");
+                continue;
+            }
+            try {
+                invoices[i] = buildInvoice(refs.customer(req.customerName), refs.item(req.itemName),
+                        req.amount, req.daysUntilDue, req.note);
+                ready.add(i);
+            } catch (Exception e) {
+                results[i] = BulkCreateResult.failed(i, e.getMessage());
+            }
         }
-        throw new FMSException("No active customer found");
+
+        if (n > ready.size()) listener.onItems(n - ready.size(), 0);
+
+        List<Future<?>> batches = new ArrayList<>();
+        for (int from = 0; from < ready.size(); from += BATCH_SIZE) {
+            List<Integer> idx = ready.subList(from, Math.min(from + BATCH_SIZE, ready.size()));
+            batches.add(batchPool.submit(() -> {
+                runBatch(idx, reqs, invoices, rows, results);
+                listener.onItems(idx.size(), (int) idx.stream().filter(i -> rows[i] != null).count());
+            }));
+        }
+        for (var f : batches) f.get();
+
+        List<InvoiceEntity> created = Arrays.stream(rows).filter(Objects::nonNull).toList();
+        if (!created.isEmpty()) tx.executeWithoutResult(s -> writer.upsert(created));
+
+        log.info("QBO bulk create: requested={}, created={}, failed={}", n, created.size(), n - created.size());
+        return Arrays.asList(results);
     }
 
-    private ReferenceType resolveItemRef(DataService ds, String name) throws FMSException {
-        String q = (name != null && !name.isBlank())
-                ? "select Id, Name from Item where Active=true and Name='"+esc(name)+"' and Type='Service'"
-                : "select Id, Name from Item where Active=true and Type='Service' startposition 1 maxresults 1";
-        var qr = ds.executeQuery(q);
-        if (!qr.getEntities().isEmpty()) {
-            Item it = (Item) qr.getEntities().getFirst();
-            ReferenceType r = new ReferenceType();
-            r.setValue(it.getId());
-            r.setName(it.getName());
-            return r;
+    /** writes only the slots listed in idx, so parallel batches never touch the same index */
+    private void runBatch(List<Integer> idx, List<CreateInvoiceReq> reqs, Invoice[] invoices,
+                          InvoiceEntity[] rows, BulkCreateResult[] results) {
+        BatchOperation op;
+        try {
+            op = qbo.callBatch(ds -> {
+                var b = new BatchOperation();
+                for (int i : idx) b.addEntity(invoices[i], OperationEnum.CREATE, String.valueOf(i));
+                ds.executeBatch(b);
+                return b;
+            });
+        } catch (Exception e) {
+            for (int i : idx) results[i] = BulkCreateResult.failed(i, e.getMessage());
+            return;
+        }
+
+        for (int i : idx) {
+            String bId = String.valueOf(i);
+            if (op.isFault(bId)) {
+                Fault fault = op.getFault(bId);
+                String msg = fault == null || fault.getError() == null ? "QBO fault"
+                        : fault.getError().stream()
+                            .map(err -> err.getDetail() != null ? err.getDetail() : err.getMessage())
+                            .collect(Collectors.joining("; "));
+                if (msg.contains("Invalid Reference Id") || msg.contains("Object Not Found")) {
+                    refs.invalidate(QboReferenceCache.Kind.CUSTOMER, reqs.get(i).customerName);
+                    refs.invalidate(QboReferenceCache.Kind.ITEM, reqs.get(i).itemName);
+                }
+                results[i] = BulkCreateResult.failed(i, msg);
+            } else if (op.getEntity(bId) instanceof Invoice created) {
+                rows[i] = InvoiceSyncService.toEntity(created);
+                results[i] = BulkCreateResult.created(i, created.getId());
+            } else {
+                results[i] = BulkCreateResult.failed(i, "no result returned for batch item");
+            }
         }
-        throw new FMSException("No active service item found");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        batchPool.shutdownNow();
     }
 }
@@ -1,84 +1,103 @@
 package com.zzy.service;
 
+import com.zzy.analytics.CustomerNameIndex;
+import com.zzy.analytics.OpenInvoiceSnapshot;
+import com.zzy.analytics.OpenInvoiceSnapshots;
 import com.zzy.domain.dto.InvoiceView;
+import com.zzy.domain.dto.InvoiceRow;
+import com.zzy.domain.dto.PageResp;
 import com.zzy.domain.dto.SummaryView;
-import com.zzy.domain.entity.InvoiceEntity;
+import com.zzy.domain.repository.ArchivedInvoiceRepository;
+import com.zzy.domain.repository.InvoiceFilter;
 import com.zzy.domain.repository.InvoiceRepository;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Read side of invoices. List reads select {@link InvoiceRow} projections and map them straight to
+ * views; the read-only transaction also puts the Hibernate session in manual flush mode.
+ */
 @Service
+@Transactional(readOnly = true)
 public class InvoiceQueryService {
 
     private final InvoiceRepository repo;
+    private final OpenInvoiceSnapshots snapshots;
+    private final CustomerNameIndex names;
+    private final ArchivedInvoiceRepository archive;
 
-    public InvoiceQueryService(InvoiceRepository repo) {
+    public InvoiceQueryService(InvoiceRepository repo, OpenInvoiceSnapshots snapshots, CustomerNameIndex names,
+                               ArchivedInvoiceRepository archive) {
         this.repo = repo;
+        this.snapshots = snapshots;
+        this.names = names;
+        this.archive = archive;
+    }
+
+    /** q resolved through the name index into the customer ids and legacy names the queries take */
+    private InvoiceFilter filter(String status, String q) {
+        if (q == null || q.isBlank()) return new InvoiceFilter(status, null, null);
+        var m = names.search(q);
+        return new InvoiceFilter(status, m.customerIds(), m.legacyNames());
     }
 
     public Page<InvoiceView> pageViews(int page, int size, String status, String q) {
         var pageable = PageRequest.of(page, size);
-        Page<InvoiceEntity> entityPage = repo.pageEntities(status, q, pageable);
+        var f = filter(status, q);
+        if (f.matchesNothing()) return Page.empty(pageable);
+        Page<InvoiceRow> rowPage = repo.pageRows(f, pageable);
 
         LocalDate today = LocalDate.now();
 
-        List<InvoiceView> views = entityPage.getContent().stream()
-                .map(i -> {
-                    boolean overdue = isOverdue(i, today);
-                    long daysUntilDue = calcDaysUntilDue(i, today);
-                    String bucket = computeBucket(i, today);        // NOT_OVERDUE / 0-7 / 8-30 / 31-60 / 61-90 / >90
-
-                    return new InvoiceView(
-                            i.getId(),
-                            i.getQboId(),
-                            i.getCustomerName(),
-                            i.getStatus(),
-                            i.getTotalAmt(),
-                            i.getBalance(),
-                            i.getTxnDate(),
-                            i.getDueDate(),
-                            overdue,
-                            (int) daysUntilDue,
-                            bucket
-                    );
-                })
-                .toList();
-
-        return new PageImpl<>(views, pageable, entityPage.getTotalElements());
-    }
-
-    /** Aging view by（count、sum(balance)）。 */
-    public Map<String, Object> aging() {
+        return rowPage.map(i -> toView(i, today));
+    }
+
+    /**
+     * keyset page of /invoices (id desc): cost does not grow with depth.
+     * one extra row is fetched to tell whether a next page exists; the count runs only on request.
+     */
+    public PageResp<InvoiceView> seekViews(String cursor, int size, String status, String q, boolean withTotal) {
+        PageCursor after = PageCursor.decode(cursor, false);
+        long beforeId = after == null ? Long.MAX_VALUE : after.id();
+        var f = filter(status, q);
+        if (f.matchesNothing()) return PageResp.keyset(List.of(), size, null, withTotal ? 0L : null);
+        List<InvoiceRow> rows = repo.seekRows(f, beforeId, size + 1);
+
+        boolean more = rows.size() > size;
+        if (more) rows = rows.subList(0, size);
+        String next = more ? PageCursor.ofId(rows.get(size - 1).id()).encode() : null;
+
         LocalDate today = LocalDate.now();
+        return PageResp.keyset(rows.stream().map(i -> toView(i, today)).toList(), size, next,
+                withTotal ? repo.countRows(f) : null);
+    }
 
-        List<InvoiceEntity> rows = repo.findByBalanceGreaterThan(BigDecimal.ZERO);
+    /**
+     * every invoice matching the /invoices filters, id desc, as one lazily-read stream.
+     * Rows are projections, so the persistence context stays empty however many pass through.
+     * Must be consumed and closed inside a transaction.
+     */
+    public Stream<InvoiceView> streamViews(String status, String q) {
+        var f = filter(status, q);
+        if (f.matchesNothing()) return Stream.empty();
+        LocalDate today = LocalDate.now();
+        return repo.streamRows(f).map(i -> toView(i, today));
+    }
 
-        // buckets：NOT_OVERDUE / 0-7 / 8-30 / 31-60 / >60
-        Map<String, List<InvoiceEntity>> grouped = rows.stream()
-                .collect(Collectors.groupingBy(i -> computeBucket(i, today),
-                        LinkedHashMap::new, Collectors.toList()));
+    /** Aging view by（count、sum(balance)）, only buckets that have rows. */
+    public Map<String, Object> aging() {
+        Map<String, Object[]> totals = agingTotals(LocalDate.now());
 
         Map<String, Object> res = new LinkedHashMap<>();
-        for (var e : grouped.entrySet()) {
-            long cnt = e.getValue().size();
-            BigDecimal amt = e.getValue().stream()
-                    .map(InvoiceEntity::getBalance)
-                    .filter(Objects::nonNull)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            Map<String, Object> v = new LinkedHashMap<>();
-            v.put("count", cnt);
-            v.put("amount", amt);
-            res.put(e.getKey(), v);
-        }
+        totals.forEach((bucket, t) -> res.put(bucket, bucketView(t)));
         return res;
     }
 
@@ -87,7 +106,9 @@ public class InvoiceQueryService {
         long openCount = 0, partialCount = 0, paidCount = 0;
         BigDecimal openAmt = BigDecimal.ZERO, partialAmt = BigDecimal.ZERO, paidAmt = BigDecimal.ZERO;
 
-        List<Object[]> rows = repo.aggregateByStatus();
+        // settled rows may have moved to the archive tier
+        List<Object[]> rows = new ArrayList<>(repo.aggregateByStatus());
+        rows.addAll(archive.aggregateByStatus());
         for (Object[] r : rows) {
             String status = (String) r[0];
             long cnt = ((Number) r[1]).longValue();
@@ -116,15 +137,15 @@ public class InvoiceQueryService {
         );
     }
 
-    private static boolean isOverdue(InvoiceEntity i, LocalDate today) {
-        if (i.getBalance() == null || i.getBalance().compareTo(BigDecimal.ZERO) <= 0) return false;
-        if (i.getDueDate() == null) return false;
-        return i.getDueDate().isBefore(today);
+    private static boolean isOverdue(InvoiceRow i, LocalDate today) {
+        if (i.balance() == null || i.balance().compareTo(BigDecimal.ZERO) <= 0) return false;
+        if (i.dueDate() == null) return false;
+        return i.dueDate().isBefore(today);
     }
 
-    private static long calcDaysUntilDue(InvoiceEntity i, LocalDate today) {
-        if (i.getDueDate() == null) return 0;
-        return ChronoUnit.DAYS.between(today, i.getDueDate());
+    private static long calcDaysUntilDue(InvoiceRow i, LocalDate today) {
+        if (i.dueDate() == null) return 0;
+        return ChronoUnit.DAYS.between(today, i.dueDate());
     }
 
     /**
@@ -132,86 +153,103 @@ public class InvoiceQueryService {
      * - NOT_OVERDUE（ including balance<=0 or dueDate>=today）
      * - 0-7 / 8-30 / 31-60 / 61-90 / >90：
      */
-    private static String computeBucket(InvoiceEntity i, LocalDate today) {
-        if (!isOverdue(i, today)) return "NOT_OVERDUE";
-        long overdueDays = ChronoUnit.DAYS.between(i.getDueDate(), today);
-        if (overdueDays > 90) return ">90";
-        if (overdueDays > 60) return "61-90";
-        if (overdueDays > 30) return "31-60";
-        if (overdueDays > 7)  return "8-30";
-        return "0-7";
+    private static String computeBucket(InvoiceRow i, LocalDate today) {
+        if (!isOverdue(i, today)) return AgingBuckets.NOT_OVERDUE;
+        return AgingBuckets.bucketOf(ChronoUnit.DAYS.between(i.dueDate(), today));
     }
 
+    /** every overdue bucket, empty ones included */
     public Map<String, Object> overdueAging() {
-        LocalDate today = LocalDate.now();
-        List<InvoiceEntity> rows = repo.findOverdueCandidates();
-
-        List<InvoiceEntity> overdue = rows.stream()
-                .filter(i -> isOverdue(i, today))
-                .toList();
+        Map<String, Object[]> totals = agingTotals(LocalDate.now());
 
-        // computeBucket buckets（0-7 / 8-30 / 31-60 / 61-90 / >90）
-        Map<String, List<InvoiceEntity>> grouped = overdue.stream()
-                .collect(Collectors.groupingBy(i -> computeBucket(i, today),
-                        LinkedHashMap::new, Collectors.toList()));
-
-        List<String> buckets = List.of("0-7","8-30","31-60","61-90",">90");
         Map<String, Object> res = new LinkedHashMap<>();
-        for (String b : buckets) {
-            List<InvoiceEntity> list = grouped.getOrDefault(b, List.of());
-            long cnt = list.size();
-            BigDecimal amt = list.stream()
-                    .map(InvoiceEntity::getBalance)
-                    .filter(Objects::nonNull)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            Map<String, Object> v = new LinkedHashMap<>();
-            v.put("count", cnt);
-            v.put("amount", amt);
-            res.put(b, v);
+        for (String b : AgingBuckets.OVERDUE) {
+            res.put(b, bucketView(totals.getOrDefault(b, new Object[]{0L, BigDecimal.ZERO})));
         }
         return res;
     }
 
+    /** one scan of the open-invoice snapshot; bucket -> {count, amount} in NOT_OVERDUE, 0-7 .. >90 order */
+    private Map<String, Object[]> agingTotals(LocalDate today) {
+        OpenInvoiceSnapshot snap = snapshots.current();
+        long t = today.toEpochDay();
+        long[] counts = new long[AgingBuckets.ALL.size()];
+        long[] cents = new long[AgingBuckets.ALL.size()];
+        for (int r = 0; r < snap.size(); r++) {
+            int b = AgingBuckets.indexOf(t - snap.dueDay(r));
+            counts[b]++;
+            cents[b] += snap.balanceCents(r);
+        }
+
+        Map<String, Object[]> ordered = new LinkedHashMap<>();
+        for (int b = 0; b < counts.length; b++) {
+            if (counts[b] > 0) {
+                ordered.put(AgingBuckets.ALL.get(b), new Object[]{counts[b], OpenInvoiceSnapshot.fromCents(cents[b])});
+            }
+        }
+        return ordered;
+    }
+
+    private static Map<String, Object> bucketView(Object[] t) {
+        Map<String, Object> v = new LinkedHashMap<>();
+        v.put("count", t[0]);
+        v.put("amount", t[1]);
+        return v;
+    }
+
+    /** filtering, bucketing (as due-date ranges), sorting and paging all run in the DB */
     public Page<InvoiceView> pageOverdue(int page, int size, String bucket, String q) {
         LocalDate today = LocalDate.now();
+        var pageable = PageRequest.of(page, size);
+
+        var range = (bucket == null || bucket.isBlank())
+                ? AgingBuckets.overdue(today)
+                : AgingBuckets.dueRange(bucket, today);
+        var f = filter(null, q);
+        if (range == null || f.matchesNothing()) return Page.empty(pageable);
+
+        return repo.pageOverdue(range.from(), range.to(), f, pageable)
+                .map(i -> toView(i, today));
+    }
 
-        List<InvoiceEntity> candidates = repo.findOverdueCandidates();
-
-        List<InvoiceView> all = candidates.stream()
-                .filter(i -> isOverdue(i, today))
-                .filter(i -> q == null || q.isBlank()
-                        || (i.getCustomerName() != null
-                        && i.getCustomerName().toLowerCase().contains(q.toLowerCase())))
-                .map(i -> new AbstractMap.SimpleEntry<>(i, computeBucket(i, today)))
-                .filter(e -> bucket == null || bucket.isBlank() || bucket.equals(e.getValue()))
-                .map(e -> {
-                    InvoiceEntity i = e.getKey();
-                    boolean overdue = true;
-                    long daysUntilDue = calcDaysUntilDue(i, today); // 逾期会是 <=0
-                    String bkt = e.getValue();
-                    return new InvoiceView(
-                            i.getId(),
-                            i.getQboId(),
-                            i.getCustomerName(),
-                            i.getStatus(),
-                            i.getTotalAmt(),
-                            i.getBalance(),
-                            i.getTxnDate(),
-                            i.getDueDate(),
-                            overdue,
-                            (int) daysUntilDue,
-                            bkt
-                    );
-                })
-                .sorted(Comparator
-                        .comparing(InvoiceView::dueDate, Comparator.nullsLast(Comparator.naturalOrder()))
-                        .thenComparing(InvoiceView::id))
-                .toList();
-
-        int from = Math.min(page * size, all.size());
-        int to = Math.min(from + size, all.size());
-        List<InvoiceView> slice = all.subList(from, to);
-
-        return new PageImpl<>(slice, PageRequest.of(page, size), all.size());
+    /** keyset page of /invoices/overdue, ordered by (dueDate, id) like pageOverdue */
+    public PageResp<InvoiceView> seekOverdue(String cursor, int size, String bucket, String q, boolean withTotal) {
+        LocalDate today = LocalDate.now();
+        PageCursor after = PageCursor.decode(cursor, true);
+
+        var range = (bucket == null || bucket.isBlank())
+                ? AgingBuckets.overdue(today)
+                : AgingBuckets.dueRange(bucket, today);
+        var f = filter(null, q);
+        if (range == null || f.matchesNothing()) return PageResp.keyset(List.of(), size, null, withTotal ? 0L : null);
+
+        // first page: (from, 0) is before every row in range since ids start at 1
+        LocalDate afterDue = after == null ? range.from() : after.dueDate();
+        long afterId = after == null ? 0 : after.id();
+        List<InvoiceRow> rows = repo.seekOverdue(range.from(), range.to(), afterDue, afterId, f, size + 1);
+
+        boolean more = rows.size() > size;
+        if (more) rows = rows.subList(0, size);
+        InvoiceRow last = more ? rows.get(size - 1) : null;
+        String next = last == null ? null : PageCursor.ofDue(last.dueDate(), last.id()).encode();
+
+        return PageResp.keyset(rows.stream().map(i -> toView(i, today)).toList(), size, next,
+                withTotal ? repo.countOverdue(range.from(), range.to(), f) : null);
+    }
+
+    private static InvoiceView toView(InvoiceRow i, LocalDate today) {
+        return new InvoiceView(
+                i.id(),
+                i.qboId(),
+                i.customerName(),
+                i.status(),
+                i.totalAmt(),
+                i.balance(),
+                i.txnDate(),
+                i.dueDate(),
+                isOverdue(i, today),
+                (int) calcDaysUntilDue(i, today),
+                computeBucket(i, today)        // NOT_OVERDUE / 0-7 / 8-30 / 31-60 / 61-90 / >90
+        );
     }
 }
@@ -2,63 +2,265 @@ package com.zzy.service;
 
 import com.intuit.ipp.data.Invoice;
 import com.intuit.ipp.services.QueryResult;
-import com.zzy.domain.repository.InvoiceRepository;
-import com.zzy.qbo.QboDataServiceFactory;
+import com.zzy.auth.TokenStore;
+import com.zzy.domain.entity.SyncStateEntity;
+import com.zzy.domain.event.InvoiceSyncFinishedEvent;
+import com.zzy.domain.repository.InvoiceArchiver;
+import com.zzy.domain.repository.InvoiceBulkWriter;
+import com.zzy.domain.repository.SyncStateRepository;
+import com.zzy.qbo.QboCallScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.stereotype.Service;
 import com.zzy.domain.entity.InvoiceEntity;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 @Service
 public class InvoiceSyncService {
     private static final Logger log = LoggerFactory.getLogger(InvoiceSyncService.class);
 
-    private final QboDataServiceFactory factory;
-    private final InvoiceRepository repo;
+    /** QBO rejects maxresults above 1000 */
+    public static final int MAX_PAGE_SIZE = 1000;
 
-    public InvoiceSyncService(QboDataServiceFactory factory, InvoiceRepository repo) {
-        this.factory = factory; this.repo = repo;
+    /** a rebuild stores (start - skew) as watermark, so edits made while it runs are pulled again */
+    private static final Duration CLOCK_SKEW = Duration.ofMinutes(5);
+
+    /** pages allowed to wait between two pipeline stages */
+    private static final int PIPELINE_DEPTH = 2;
+
+    private static final DateTimeFormatter QBO_TS =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxxx").withZone(ZoneOffset.UTC);
+
+    private final QboCallScheduler qbo;
+    private final InvoiceBulkWriter writer;
+    private final SyncStateRepository stateRepo;
+    private final TokenStore store;
+    private final TransactionTemplate tx;
+    private final ApplicationEventPublisher events;
+    private final InvoiceArchiver archiver;
+
+    public InvoiceSyncService(QboCallScheduler qbo, InvoiceBulkWriter writer,
+                              SyncStateRepository stateRepo, TokenStore store,
+                              PlatformTransactionManager txManager, ApplicationEventPublisher events,
+                              InvoiceArchiver archiver) {
+        this.qbo = qbo; this.writer = writer;
+        this.stateRepo = stateRepo; this.store = store;
+        this.tx = new TransactionTemplate(txManager);
+        this.events = events;
+        this.archiver = archiver;
+    }
+
+    /** INCREMENTAL pulls changes since the realm watermark; REBUILD re-pulls everything */
+    public enum SyncMode { INCREMENTAL, REBUILD }
+
+    /** upserts = inserted + updated rows; unchanged = rows skipped by content hash */
+    public record SyncResult(SyncMode mode, int pages, int upserts, int unchanged) {}
+
+    /** progress callbacks; invoked on the thread that writes pages */
+    public interface SyncListener {
+        SyncListener NONE = new SyncListener() {};
+
+        /** expectedRows is QBO's count of rows to pull, null when it could not be fetched */
+        default void onStart(SyncMode mode, Integer expectedRows) {}
+
+        default void onPage(int fetched, InvoiceBulkWriter.UpsertResult result) {}
     }
 
-    /** sync batch data from QBO and insert to H2 */
-    @Transactional
-    public int syncFromQbo(int batch) throws Exception {
-        var ds = factory.get();
-        String sql = "select * from invoice";
-        QueryResult queryResult = ds.executeQuery(sql);
-
-        int count = queryResult.getEntities().size();
-
-        log.info("Total number of invoices: " + count);
-
-        int n=0;
-        for (var e : queryResult.getEntities()) {
-            var inv = (Invoice)e;
-            var ent = repo.findByQboId(inv.getId()).orElseGet(InvoiceEntity::new);
-            ent.setQboId(inv.getId());
-            ent.setCustomerName(inv.getCustomerRef()==null? null : inv.getCustomerRef().getName());
-            ent.setTotalAmt(inv.getTotalAmt());
-            ent.setBalance(inv.getBalance());
-            ent.setTxnDate(inv.getTxnDate() == null ? null : inv.getTxnDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
-            ent.setDueDate(inv.getDueDate() == null ? null : inv.getDueDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
-
-            // status
-            BigDecimal total = inv.getTotalAmt()==null? BigDecimal.ZERO: inv.getTotalAmt();
-            BigDecimal bal   = inv.getBalance()==null? BigDecimal.ZERO: inv.getBalance();
-            String status;
-            if ("VOID".equalsIgnoreCase(String.valueOf(inv.getTxnStatus()))) status="VOID";
-            else if (total.signum()>0 && bal.signum()==0) status="PAID";
-            else if (bal.compareTo(total)==0 && total.signum()>0) status="OPEN";
-            else if (bal.signum()>0) status="PARTIAL_PAID";
-            else status="UNKNOWN";
-            ent.setStatus(status);
-
-            repo.save(ent); n++;
+    /** a fetched QBO page and the watermark to store with it (null = leave the watermark alone) */
+    private record FetchedPage(List<Invoice> invoices, Instant watermark) {}
+
+    private record MappedPage(List<InvoiceEntity> rows, Instant watermark) {}
+
+    /**
+     * sync invoices from QBO page by page (maxresults = batch);
+     * every page is committed in its own transaction, so memory stays bounded
+     * by a few pages whatever the realm size.
+     * INCREMENTAL falls back to REBUILD when the realm has no watermark yet.
+     * pipelined overlaps fetching page N+1 with mapping and writing page N.
+     */
+    public SyncResult syncFromQbo(int batch, SyncMode mode, boolean pipelined,
+                                  SyncListener listener) throws Exception {
+        int pageSize = Math.max(1, Math.min(batch, MAX_PAGE_SIZE));
+        String realmId = store.getRealmId();
+
+        Instant watermark = mode == SyncMode.INCREMENTAL
+                ? stateRepo.findById(realmId).map(SyncStateEntity::getWatermark).orElse(null)
+                : null;
+        SyncMode effective = watermark == null ? SyncMode.REBUILD : SyncMode.INCREMENTAL;
+        Instant startedAt = Instant.now().minus(CLOCK_SKEW);
+
+        SyncPipeline.Source<FetchedPage> source = effective == SyncMode.REBUILD
+                ? rebuildPages(pageSize)
+                : incrementalPages(watermark, pageSize);
+        listener.onStart(effective, countRows(effective == SyncMode.REBUILD ? "" : changedSince(watermark)));
+
+        int[] totals = new int[3]; // pages, upserts, unchanged
+        SyncPipeline.Sink<MappedPage> sink = page -> {
+            var r = persistPage(page.rows(), realmId, page.watermark());
+            totals[0]++;
+            totals[1] += r.upserts();
+            totals[2] += r.unchanged();
+            listener.onPage(page.rows().size(), r);
+            log.info("QBO {} page {}: fetched={}, upserts={}, unchanged={}",
+                    effective, totals[0], page.rows().size(), r.upserts(), r.unchanged());
+        };
+
+        if (pipelined) {
+            SyncPipeline.run(PIPELINE_DEPTH, source, InvoiceSyncService::mapPage, sink);
+        } else {
+            for (FetchedPage page; (page = source.next()) != null; ) sink.write(mapPage(page));
         }
-        return n;
+
+        // a rebuild only becomes the new baseline once every page is in
+        if (effective == SyncMode.REBUILD) tx.executeWithoutResult(s -> saveWatermark(realmId, startedAt));
+
+        // before the finished event, so listeners and caches see the tiers as they will stay
+        archiver.archiveSettled();
+
+        events.publishEvent(new InvoiceSyncFinishedEvent(realmId, totals[1]));
+
+        log.info("QBO {} done: realm={}, pipelined={}, pages={}, upserts={}, unchanged={}",
+                effective, realmId, pipelined, totals[0], totals[1], totals[2]);
+        return new SyncResult(effective, totals[0], totals[1], totals[2]);
+    }
+
+    /** full pass ordered by Id */
+    private SyncPipeline.Source<FetchedPage> rebuildPages(int pageSize) {
+        return new SyncPipeline.Source<>() {
+            int start = 1;
+            boolean done;
+
+            @Override
+            public FetchedPage next() throws Exception {
+                if (done) return null;
+                List<Invoice> page = fetchPage(
+                        "select * from Invoice orderby Id startposition " + start + " maxresults " + pageSize);
+                done = page.size() < pageSize;
+                start += pageSize;
+                return page.isEmpty() ? null : new FetchedPage(page, null);
+            }
+        };
+    }
+
+    /**
+     * seeks through invoices changed since the watermark in LastUpdatedTime order.
+     * each page carries the watermark it advances to, stored in the same transaction as its rows;
+     * startposition only moves past pages whose rows all share one timestamp.
+     */
+    private SyncPipeline.Source<FetchedPage> incrementalPages(Instant watermark, int pageSize) {
+        return new SyncPipeline.Source<>() {
+            Instant wm = watermark;
+            int start = 1;
+            boolean done;
+
+            @Override
+            public FetchedPage next() throws Exception {
+                if (done) return null;
+                List<Invoice> page = fetchPage(
+                        "select * from Invoice" + changedSince(wm)
+                                + " orderby MetaData.LastUpdatedTime startposition " + start + " maxresults " + pageSize);
+                if (page.isEmpty()) return null;
+
+                Instant pageMax = maxLastUpdated(page, wm);
+                done = page.size() < pageSize;
+                if (pageMax.equals(wm)) {
+                    start += pageSize;
+                } else {
+                    wm = pageMax;
+                    start = 1;
+                }
+                return new FetchedPage(page, pageMax);
+            }
+        };
+    }
+
+    private static String changedSince(Instant wm) {
+        return " where MetaData.LastUpdatedTime >= '" + QBO_TS.format(wm) + "'";
+    }
+
+    /** row count for progress/ETA only, so a failure here never fails the sync */
+    private Integer countRows(String where) {
+        try {
+            QueryResult r = qbo.call(ds -> ds.executeQuery("select count(*) from Invoice" + where));
+            return r == null ? null : r.getTotalCount();
+        } catch (Exception e) {
+            log.warn("QBO invoice count failed, ETA unavailable: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private List<Invoice> fetchPage(String sql) throws Exception {
+        QueryResult queryResult = qbo.call(ds -> ds.executeQuery(sql));
+        if (queryResult == null || queryResult.getEntities() == null) return List.of();
+        return queryResult.getEntities().stream().map(e -> (Invoice) e).toList();
+    }
+
+    private static MappedPage mapPage(FetchedPage page) {
+        return new MappedPage(page.invoices().stream().map(InvoiceSyncService::toEntity).toList(),
+                page.watermark());
+    }
+
+    /** bulk-upsert one page, moving the watermark along with it when given */
+    private InvoiceBulkWriter.UpsertResult persistPage(List<InvoiceEntity> rows, String realmId, Instant watermark) {
+        return tx.execute(s -> {
+            var r = writer.upsert(rows);
+            if (watermark != null) saveWatermark(realmId, watermark);
+            return r;
+        });
+    }
+
+    private void saveWatermark(String realmId, Instant watermark) {
+        var state = stateRepo.findById(realmId).orElseGet(() -> {
+            var s = new SyncStateEntity();
+            s.setRealmId(realmId);
+            return s;
+        });
+        state.setWatermark(watermark);
+        state.setLastSyncAt(Instant.now());
+        stateRepo.save(state);
+    }
+
+    private static Instant maxLastUpdated(List<Invoice> page, Instant floor) {
+        Instant max = floor;
+        for (var inv : page) {
+            if (inv.getMetaData() == null || inv.getMetaData().getLastUpdatedTime() == null) continue;
+            Instant t = inv.getMetaData().getLastUpdatedTime().toInstant();
+            if (t.isAfter(max)) max = t;
+        }
+        return max;
+    }
+
+    /** map a QBO invoice onto a detached local row */
+    static InvoiceEntity toEntity(Invoice inv) {
+        var ent = new InvoiceEntity();
+        ent.setQboId(inv.getId());
+        ent.setCustomerQboId(inv.getCustomerRef()==null? null : inv.getCustomerRef().getValue());
+        ent.setCustomerName(inv.getCustomerRef()==null? null : inv.getCustomerRef().getName());
+        ent.setTotalAmt(inv.getTotalAmt());
+        ent.setBalance(inv.getBalance());
+        ent.setTxnDate(inv.getTxnDate() == null ? null : inv.getTxnDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+        ent.setDueDate(inv.getDueDate() == null ? null : inv.getDueDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+        ent.setStatus(statusOf(inv));
+        return ent;
+    }
+
+    static String statusOf(Invoice inv) {
+        BigDecimal total = inv.getTotalAmt()==null? BigDecimal.ZERO: inv.getTotalAmt();
+        BigDecimal bal   = inv.getBalance()==null? BigDecimal.ZERO: inv.getBalance();
+        if ("VOID".equalsIgnoreCase(String.valueOf(inv.getTxnStatus()))) return "VOID";
+        if (total.signum()>0 && bal.signum()==0) return "PAID";
+        if (bal.compareTo(total)==0 && total.signum()>0) return "OPEN";
+        if (bal.signum()>0) return "PARTIAL_PAID";
+        return "UNKNOWN";
     }
 }
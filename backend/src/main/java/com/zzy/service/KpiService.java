@@ -1,65 +1,88 @@
 package com.zzy.service;
 
-import com.zzy.domain.repository.InvoiceRepository;
+import com.zzy.analytics.AgingHistory;
+import com.zzy.analytics.DueDateIndex;
+import com.zzy.analytics.OpenInvoiceSnapshot;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 @RequiredArgsConstructor
 public class KpiService {
-    private final InvoiceRepository repo;
+    /** longest range /aging/history serves in one call */
+    private static final int MAX_HISTORY_DAYS = 731;
+
+    private final DueDateIndex index;
+    private final AgingHistory history;
 
-    public record OverdueBucket(java.time.LocalDate bucketDate,
-                                java.math.BigDecimal amount,
+    public record OverdueBucket(LocalDate bucketDate,
+                                BigDecimal amount,
                                 long count) {}
 
-    /** overdue，gourp by ：gran=day|week */
-    public java.util.List<OverdueBucket> overdueByDueDate(java.time.LocalDate from,
-                                                          java.time.LocalDate to,
-                                                          String gran) {
-        var today = java.time.LocalDate.now();
-        var rows = repo.findOverdueCandidates(); // 你已有：balance>0 && dueDate not null
+    public record OverdueTotal(LocalDate from, LocalDate to, BigDecimal amount, long count) {}
 
-        var overdue = rows.stream()
-                .filter(i -> i.getDueDate() != null && i.getDueDate().isBefore(today))
-                .filter(i -> i.getBalance() != null && i.getBalance().signum() > 0)
-                .toList();
+    /**
+     * overdue，gourp by ：gran=day|week|month (weeks start on Monday);
+     * one O(log n) index lookup per bucket, empty buckets are left out
+     */
+    public List<OverdueBucket> overdueByDueDate(LocalDate from, LocalDate to, String gran) {
+        LocalDate last = lastOverdueDay(to);
+        LocalDate first = from.isBefore(index.firstDay()) ? index.firstDay() : from;
+        if (first.isAfter(last)) return List.of();
 
-        java.util.function.Function<java.time.LocalDate, java.time.LocalDate> bucketFn =
-                "week".equalsIgnoreCase(gran)
-                        ? d -> d.with(java.time.DayOfWeek.MONDAY)
-                        : d -> d;
+        List<OverdueBucket> res = new ArrayList<>();
+        for (LocalDate start = bucketStart(first, gran); !start.isAfter(last); ) {
+            LocalDate next = nextBucket(start, gran);
+            LocalDate lo = start.isBefore(first) ? first : start;
+            LocalDate hi = next.minusDays(1).isAfter(last) ? last : next.minusDays(1);
+            long[] s = index.sum(lo, hi);
+            if (s[0] > 0) res.add(new OverdueBucket(start, OpenInvoiceSnapshot.fromCents(s[1]), s[0]));
+            start = next;
+        }
+        return res;
+    }
 
-        // window slides
-        var filtered = overdue.stream()
-                .filter(i -> {
-                    var d = i.getDueDate();
-                    return (d.isEqual(from) || d.isAfter(from)) && (d.isEqual(to) || d.isBefore(to));
-                });
+    /** overdue invoices due in [from, to], in one index lookup */
+    public OverdueTotal overdueTotal(LocalDate from, LocalDate to) {
+        LocalDate last = lastOverdueDay(to);
+        long[] s = from.isAfter(last) ? new long[]{0, 0} : index.sum(from, last);
+        return new OverdueTotal(from, to, OpenInvoiceSnapshot.fromCents(s[1]), s[0]);
+    }
 
-        // grouping
-        var grouped = new java.util.LinkedHashMap<java.time.LocalDate,
-                java.util.concurrent.atomic.AtomicReference<java.math.BigDecimal>>();
-        var counts  = new java.util.LinkedHashMap<java.time.LocalDate, java.util.concurrent.atomic.AtomicLong>();
+    /**
+     * daily aging buckets (count, balance) for snapshot days in [from, to], oldest first;
+     * one row per status when {@code status} is given, else summed over statuses
+     */
+    public List<AgingHistory.Point> agingHistory(LocalDate from, LocalDate to, String status) {
+        if (from.isAfter(to)) throw new IllegalArgumentException("from must not be after to");
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_HISTORY_DAYS) {
+            throw new IllegalArgumentException("range must be at most " + MAX_HISTORY_DAYS + " days");
+        }
+        return history.range(from, to, status == null || status.isBlank() ? null : status.toUpperCase());
+    }
 
-        filtered.forEach(i -> {
-            var k = bucketFn.apply(i.getDueDate());
-            grouped.computeIfAbsent(k, __ -> new java.util.concurrent.atomic.AtomicReference<>(java.math.BigDecimal.ZERO))
-                    .updateAndGet(v -> v.add(nz(i.getBalance())));
-            counts.computeIfAbsent(k, __ -> new java.util.concurrent.atomic.AtomicLong(0)).incrementAndGet();
-        });
+    /** anything due before today is overdue */
+    private static LocalDate lastOverdueDay(LocalDate to) {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        return to.isAfter(yesterday) ? yesterday : to;
+    }
 
-        return grouped.entrySet().stream()
-                .sorted(java.util.Map.Entry.comparingByKey())
-                .map(e -> new OverdueBucket(
-                        e.getKey(),
-                        e.getValue().get(),
-                        counts.get(e.getKey()).get()
-                ))
-                .toList();
+    private static LocalDate bucketStart(LocalDate d, String gran) {
+        if ("week".equalsIgnoreCase(gran)) return d.with(DayOfWeek.MONDAY);
+        if ("month".equalsIgnoreCase(gran)) return d.withDayOfMonth(1);
+        return d;
     }
 
-    private static java.math.BigDecimal nz(java.math.BigDecimal v) {
-        return v == null ? java.math.BigDecimal.ZERO : v;
+    private static LocalDate nextBucket(LocalDate start, String gran) {
+        if ("week".equalsIgnoreCase(gran)) return start.plusWeeks(1);
+        if ("month".equalsIgnoreCase(gran)) return start.plusMonths(1);
+        return start.plusDays(1);
     }
 }
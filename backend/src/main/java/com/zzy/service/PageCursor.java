@@ -0,0 +1,43 @@
+package com.zzy.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor: the sort key of the last row a client has seen.
+ * /invoices seeks on id (desc), /invoices/overdue on (dueDate, id) (asc);
+ * dueDate is null for id-only cursors.
+ * Encoded as url-safe base64 of "id" or "epochDay:id".
+ */
+public record PageCursor(LocalDate dueDate, long id) {
+
+    public static PageCursor ofId(long id) {
+        return new PageCursor(null, id);
+    }
+
+    public static PageCursor ofDue(LocalDate dueDate, long id) {
+        return new PageCursor(dueDate, id);
+    }
+
+    public String encode() {
+        String raw = dueDate == null ? Long.toString(id) : dueDate.toEpochDay() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** null/blank = first page; anything unreadable is a 400 */
+    public static PageCursor decode(String cursor, boolean withDueDate) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            if (withDueDate != (sep >= 0)) throw new IllegalArgumentException();
+            return sep < 0
+                    ? ofId(Long.parseLong(raw))
+                    : ofDue(LocalDate.ofEpochDay(Long.parseLong(raw.substring(0, sep))),
+                            Long.parseLong(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+    }
+}
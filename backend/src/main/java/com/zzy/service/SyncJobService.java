@@ -0,0 +1,127 @@
+package com.zzy.service;
+
+import com.zzy.auth.TokenStore;
+import com.zzy.domain.dto.SyncJobView;
+import com.zzy.domain.repository.InvoiceBulkWriter;
+import com.zzy.service.InvoiceSyncService.SyncMode;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Runs QBO syncs as background jobs so request threads return immediately.
+ * At most one job runs per realm: a second submit while one is running joins it.
+ * Past a few queued jobs, submits are rejected.
+ */
+@Service
+public class SyncJobService {
+    private final InvoiceSyncService syncSvc;
+    private final TokenStore store;
+    private final BackgroundJobs<SyncJob> jobs = new BackgroundJobs<>("qbo-sync-job", 2, 4);
+
+    // guarded by this
+    private final Map<String, SyncJob> runningByRealm = new HashMap<>();
+
+    public SyncJobService(InvoiceSyncService syncSvc, TokenStore store) {
+        this.syncSvc = syncSvc;
+        this.store = store;
+    }
+
+    /** joined = true when the realm already had a running job and that job is returned */
+    public record Submission(SyncJobView job, boolean joined) {}
+
+    public synchronized Submission submit(int batch, SyncMode mode, boolean pipelined) {
+        if (!store.hasTokens()) throw new IllegalStateException("Not connected.");
+        String realmId = store.getRealmId();
+
+        var current = runningByRealm.get(realmId);
+        if (current != null) return new Submission(current.view(), true);
+
+        var job = new SyncJob(UUID.randomUUID().toString(), realmId, mode, pipelined);
+        jobs.submit(job, () -> syncSvc.syncFromQbo(batch, job.mode, job.pipelined, job), error -> {
+            // a job left in runningByRealm would be joined by every later submit
+            synchronized (this) {
+                job.finish(error);
+                runningByRealm.remove(job.realmId, job);
+            }
+        });
+        runningByRealm.put(realmId, job); // before the job can finish: that waits for this monitor
+        return new Submission(job.view(), false);
+    }
+
+    public Optional<SyncJobView> find(String jobId) {
+        return jobs.find(jobId).map(SyncJob::view);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobs.shutdown();
+    }
+
+    /** progress is written by the sync's writer thread and read by status requests */
+    private static final class SyncJob implements InvoiceSyncService.SyncListener, BackgroundJobs.Job {
+        final String id;
+        final String realmId;
+        final boolean pipelined;
+        final Instant startedAt = Instant.now();
+        volatile SyncMode mode;
+        volatile Integer expectedRows;
+        volatile int pages;
+        volatile long fetched, upserted, unchanged;
+        volatile Instant finishedAt;
+        volatile String error;
+
+        SyncJob(String id, String realmId, SyncMode mode, boolean pipelined) {
+            this.id = id; this.realmId = realmId;
+            this.mode = mode; this.pipelined = pipelined;
+        }
+
+        @Override
+        public void onStart(SyncMode effective, Integer expected) {
+            mode = effective;
+            expectedRows = expected;
+        }
+
+        @Override
+        public void onPage(int rows, InvoiceBulkWriter.UpsertResult r) {
+            fetched += rows;
+            upserted += r.upserts();
+            unchanged += r.unchanged();
+            pages++;
+        }
+
+        void finish(String err) {
+            error = err;
+            finishedAt = Instant.now();
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public boolean finished() {
+            return finishedAt != null;
+        }
+
+        SyncJobView view() {
+            Instant end = finishedAt;
+            long elapsedMs = ((end == null) ? Instant.now() : end).toEpochMilli() - startedAt.toEpochMilli();
+            long done = fetched;
+            double rps = elapsedMs <= 0 ? 0.0 : done * 1000.0 / elapsedMs;
+
+            Integer expected = expectedRows;
+            Long eta = null;
+            if (end == null && expected != null && rps > 0) {
+                eta = Math.max(0, Math.round((expected - done) / rps));
+            }
+
+            String state = end == null ? "RUNNING" : (error == null ? "SUCCEEDED" : "FAILED");
+            return new SyncJobView(id, realmId, mode.name(), pipelined, state, startedAt, end,
+                    pages, done, upserted, unchanged, expected, Math.round(rps * 10) / 10.0, eta, error);
+        }
+    }
+}
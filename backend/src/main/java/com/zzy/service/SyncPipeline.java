@@ -0,0 +1,90 @@
+package com.zzy.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Three-stage fetch -> map -> write pipeline joined by bounded queues.
+ * The fetcher and mapper run on their own threads, the writer on the caller's thread.
+ * A full queue blocks the stage upstream of it, so at most {@code capacity}
+ * pages wait between two stages and the fetcher never runs far ahead of the DB.
+ */
+final class SyncPipeline {
+
+    /** yields the next page, or null once the source is exhausted */
+    interface Source<F> { F next() throws Exception; }
+
+    interface Mapper<F, M> { M map(F page) throws Exception; }
+
+    interface Sink<M> { void write(M page) throws Exception; }
+
+    /** queue slot; an empty slot marks the end of the stream */
+    private record Slot<T>(T item) {
+        static <T> Slot<T> end() { return new Slot<>(null); }
+        boolean isEnd() { return item == null; }
+    }
+
+    private static final AtomicInteger SEQ = new AtomicInteger();
+
+    private SyncPipeline() {}
+
+    /** runs until the source is exhausted; the first failure of any stage is rethrown here */
+    static <F, M> void run(int capacity, Source<F> source, Mapper<F, M> mapper, Sink<M> sink) throws Exception {
+        BlockingQueue<Slot<F>> fetched = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Slot<M>> mapped  = new ArrayBlockingQueue<>(capacity);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        int id = SEQ.incrementAndGet();
+        AtomicInteger stage = new AtomicInteger();
+        ExecutorService stages = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "qbo-sync-" + id + "-" + (stage.getAndIncrement() == 0 ? "fetch" : "map"));
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            stages.execute(() -> {
+                try {
+                    try {
+                        for (F page; (page = source.next()) != null; ) fetched.put(new Slot<>(page));
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                    fetched.put(Slot.end());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // writer gave up, nobody is listening
+                }
+            });
+
+            stages.execute(() -> {
+                try {
+                    try {
+                        for (Slot<F> s; !(s = fetched.take()).isEnd(); ) mapped.put(new Slot<>(mapper.map(s.item())));
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                    mapped.put(Slot.end());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            for (Slot<M> s; !(s = mapped.take()).isEnd(); ) sink.write(s.item());
+
+            Throwable t = failure.get();
+            if (t instanceof Exception e) throw e;
+            if (t instanceof Error err) throw err;
+        } finally {
+            // unblocks a fetcher/mapper still waiting on a full queue when the writer failed
+            stages.shutdownNow();
+        }
+    }
+}
@@ -41,11 +41,8 @@ public class AuthController {
             throw new IllegalStateException("Missing realmId from OAuth callback");
         }
 
-        // 3) code exchange token
-        auth.exchangeCodeForTokens(code);
-
-        // 4) save realmId
-        store.setRealmId(realmId);
+        // 3) code exchange token, published together with realmId
+        auth.exchangeCodeForTokens(code, realmId);
 
         return new RedirectView("http://localhost:5173/");
     }
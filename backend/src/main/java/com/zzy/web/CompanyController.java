@@ -2,7 +2,8 @@ package com.zzy.web;
 
 import com.intuit.oauth2.config.Environment;
 import com.zzy.auth.TokenStore;
-import com.zzy.qbo.QboDataServiceFactory;
+import com.zzy.qbo.QboCallScheduler;
+import com.zzy.qbo.QboReferenceCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
@@ -15,11 +16,12 @@ import java.util.Objects;
 public class CompanyController {
     private static final Logger log = LoggerFactory.getLogger(CompanyController.class);
 
-    private final QboDataServiceFactory factory;
+    private final QboCallScheduler qbo;
+    private final QboReferenceCache refs;
     private final TokenStore store;
 
-    public CompanyController(QboDataServiceFactory factory, TokenStore store) {
-        this.factory = factory; this.store = store;
+    public CompanyController(QboCallScheduler qbo, QboReferenceCache refs, TokenStore store) {
+        this.qbo = qbo; this.refs = refs; this.store = store;
     }
 
     @GetMapping("/company")
@@ -47,8 +49,7 @@ public class CompanyController {
         } catch (Exception ignore) { }
 
         try {
-            var ds = factory.get();
-            var qr = ds.executeQuery("select * from companyinfo");
+            var qr = qbo.call(ds -> ds.executeQuery("select * from companyinfo"));
             return ResponseEntity.ok(qr);
 
         } catch (com.intuit.ipp.exception.InvalidTokenException e) {
@@ -63,4 +64,20 @@ public class CompanyController {
         }
     }
 
+    /** per-realm QBO call scheduler counters: queue wait, throttles, retries, current rate */
+    @GetMapping("/admin/qbo-calls")
+    public Map<String, Object> qboCalls() {
+        return qbo.stats();
+    }
+
+    /** bulk-loads active customers and service items used by invoice creation */
+    @PostMapping("/admin/qbo-refs/preload")
+    public Map<String, Object> preloadRefs() throws Exception {
+        return refs.preload();
+    }
+
+    @GetMapping("/admin/qbo-refs")
+    public Map<String, Object> refStats() {
+        return refs.stats();
+    }
 }
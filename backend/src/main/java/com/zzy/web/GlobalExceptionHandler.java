@@ -1,10 +1,13 @@
 package com.zzy.web;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestControllerAdvice
 public class GlobalExceptionHandler {
@@ -16,6 +19,14 @@ public class GlobalExceptionHandler {
         );
     }
 
+    /** a background job queue is full */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String,Object>> busy(RejectedExecutionException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "30").body(
+                Map.of("error", "busy", "message", ex.getMessage())
+        );
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String,Object>> serverError(Exception ex) {
         return ResponseEntity.status(500).body(
@@ -1,68 +1,173 @@
 package com.zzy.web;
 
+import com.zzy.cache.ResultCache;
+import com.zzy.domain.dto.BulkCreateJobView;
+import com.zzy.domain.dto.CreateInvoiceReq;
 import com.zzy.domain.dto.InvoiceView;
 import com.zzy.domain.dto.PageResp;
 import com.zzy.domain.dto.SummaryView;
+import com.zzy.domain.dto.SyncJobView;
+import com.zzy.service.BulkCreateJobService;
+import com.zzy.service.InvoiceExportService;
 import com.zzy.service.InvoiceQueryService;
 import com.zzy.service.InvoiceSyncService;
+import com.zzy.service.SyncJobService;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @Validated
 @RestController
 @RequestMapping("/api")
 public class InvoiceController {
 
+    /** keeps one bulk request to a bounded number of QBO batches */
+    private static final int MAX_BULK_CREATE = 3000;
+
     private final InvoiceQueryService querySvc;
-    private final InvoiceSyncService syncSvc;
+    private final SyncJobService syncJobs;
+    private final BulkCreateJobService bulkJobs;
+    private final ResultCache results;
+    private final InvoiceExportService exportSvc;
 
 
-    public InvoiceController(InvoiceQueryService querySvc, InvoiceSyncService syncSvc) {
+    public InvoiceController(InvoiceQueryService querySvc, SyncJobService syncJobs,
+                             BulkCreateJobService bulkJobs, ResultCache results,
+                             InvoiceExportService exportSvc) {
         this.querySvc = querySvc;
-        this.syncSvc = syncSvc;
+        this.syncJobs = syncJobs;
+        this.bulkJobs = bulkJobs;
+        this.results = results;
+        this.exportSvc = exportSvc;
     }
 
+    /** starts (or joins) a background sync; poll /admin/sync-jobs/{jobId} for progress */
     @PostMapping("/admin/sync-qbo")
-    public Map<String, Object> sync(@RequestParam(defaultValue = "200") int batch) throws Exception {
-        var upserts = syncSvc.syncFromQbo(batch);
-        return Map.of("upserts", upserts);
+    public ResponseEntity<Map<String, Object>> sync(@RequestParam(defaultValue = "200") @Min(1) @Max(1000) int batch,
+                                                    @RequestParam(defaultValue = "incremental") String mode,
+                                                    @RequestParam(defaultValue = "false") boolean pipelined) {
+        var m = switch (mode.toLowerCase()) {
+            case "incremental" -> InvoiceSyncService.SyncMode.INCREMENTAL;
+            case "rebuild"     -> InvoiceSyncService.SyncMode.REBUILD;
+            default -> throw new IllegalArgumentException("mode must be incremental|rebuild");
+        };
+        var sub = syncJobs.submit(batch, m, pipelined);
+        return ResponseEntity.accepted().body(Map.of(
+                "jobId", sub.job().jobId(),
+                "joined", sub.joined(),
+                "job", sub.job()));
+    }
+
+    @GetMapping("/admin/sync-jobs/{jobId}")
+    public ResponseEntity<SyncJobView> syncJob(@PathVariable String jobId) {
+        return ResponseEntity.of(syncJobs.find(jobId));
     }
 
+    /** dashboard result cache counters: size, hits, misses, evictions, data version */
+    @GetMapping("/admin/result-cache")
+    public Map<String, Object> resultCache() {
+        return results.stats();
+    }
+
+    /**
+     * month-end style bulk create, run as a background job; poll /invoices/bulk/{jobId}, whose
+     * results give each item its own ok/error once the job finishes
+     */
+    @PostMapping("/invoices/bulk")
+    public ResponseEntity<Map<String, Object>> bulkCreate(@RequestBody List<CreateInvoiceReq> reqs) {
+        if (reqs.isEmpty() || reqs.size() > MAX_BULK_CREATE) {
+            throw new IllegalArgumentException("bulk create takes 1.." + MAX_BULK_CREATE + " invoices");
+        }
+        var job = bulkJobs.submit(reqs);
+        return ResponseEntity.accepted().body(Map.of("jobId", job.jobId(), "job", job));
+    }
+
+    @GetMapping("/invoices/bulk/{jobId}")
+    public ResponseEntity<BulkCreateJobView> bulkCreateJob(@PathVariable String jobId) {
+        return ResponseEntity.of(bulkJobs.find(jobId));
+    }
+
+    /**
+     * offset paging by default; passing {@code cursor} (empty for the first page) switches to
+     * keyset paging, where {@code page} is ignored, nextCursor leads to the next page
+     * and the total is only counted with {@code withTotal=true}.
+     */
     @GetMapping("/invoices")
     public PageResp<InvoiceView> page(@RequestParam(defaultValue = "0") @Min(0) int page,
                                       @RequestParam(defaultValue = "10") @Min(1) @Max(200) int size,
                                       @RequestParam(required = false) String status,
-                                      @RequestParam(required = false) String q) {
+                                      @RequestParam(required = false) String q,
+                                      @RequestParam(required = false) String cursor,
+                                      @RequestParam(defaultValue = "false") boolean withTotal) {
+        if (cursor != null) return querySvc.seekViews(cursor, size, status, q, withTotal);
         Page<InvoiceView> pages =  querySvc.pageViews(page, size, status, q);
         return PageResp.of(pages);
     }
 
+    /**
+     * every invoice matching the /invoices filters as CSV or NDJSON, streamed from one DB cursor;
+     * {@code gzip=true} compresses the body (Content-Encoding: gzip)
+     */
+    @GetMapping("/invoices/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "csv") String format,
+                                                        @RequestParam(required = false) String status,
+                                                        @RequestParam(required = false) String q,
+                                                        @RequestParam(defaultValue = "false") boolean gzip) {
+        var f = switch (format.toLowerCase()) {
+            case "csv"    -> InvoiceExportService.Format.CSV;
+            case "ndjson" -> InvoiceExportService.Format.NDJSON;
+            default -> throw new IllegalArgumentException("format must be csv|ndjson");
+        };
+        StreamingResponseBody body = out -> {
+            if (!gzip) {
+                exportSvc.export(f, status, q, out);
+                return;
+            }
+            var zip = new GZIPOutputStream(out, 64 * 1024);
+            exportSvc.export(f, status, q, zip);
+            zip.finish();
+        };
+        var res = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, f.contentType + "; charset=UTF-8")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"invoices." + f.extension + "\"");
+        if (gzip) res.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return res.body(body);
+    }
+
     @GetMapping("/invoices/aging")
     public Map<String, Object> aging() {
-        return querySvc.aging();
+        return results.get("aging", querySvc::aging);
     }
 
     @GetMapping("/summary")
     public SummaryView invoiceSummary() {
-        return querySvc.summary();
+        return results.get("summary", querySvc::summary);
     }
 
+    /** same offset/keyset switch as /invoices */
     @GetMapping("/invoices/overdue")
     public PageResp<InvoiceView> overduePage(@RequestParam(defaultValue = "0") @Min(0) int page,
                                          @RequestParam(defaultValue = "10") @Min(1) @Max(200) int size,
                                          @RequestParam(required = false) String bucket,
-                                         @RequestParam(required = false) String q) {
+                                         @RequestParam(required = false) String q,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "false") boolean withTotal) {
+        if (cursor != null) return querySvc.seekOverdue(cursor, size, bucket, q, withTotal);
         Page<InvoiceView> pages = querySvc.pageOverdue(page, size, bucket, q);
         return PageResp.of(pages);
     }
 
     @GetMapping("/invoices/aging/overdue")
     public Map<String, Object> overdueAging() {
-        return querySvc.overdueAging();
+        return results.get("overdueAging", querySvc::overdueAging);
     }
 }
@@ -1,5 +1,7 @@
 package com.zzy.web;
 
+import com.zzy.cache.ResultCache;
+import com.zzy.analytics.AgingHistory;
 import com.zzy.domain.dto.CustomerRiskDTO;
 import com.zzy.domain.dto.RankMode;
 import com.zzy.service.KpiService;
@@ -19,6 +21,7 @@ import java.util.List;
 public class RiskController {
     private final RiskTopService svc;
     private final KpiService kpi;
+    private final ResultCache results;
 
     // /api/risk/customers?mode=amount|max_days|ratio&top=10
     @GetMapping("/customers")
@@ -32,7 +35,8 @@ public class RiskController {
             case "ratio"    -> RankMode.RATIO;
             default -> throw new IllegalArgumentException("mode must be amount|max_days|ratio");
         };
-        return svc.topCustomers(m, Math.max(1, Math.min(top, 100)));
+        int k = Math.max(1, Math.min(top, 100));
+        return results.get("riskTop", () -> svc.topCustomers(m, k), m, k);
     }
 
     @GetMapping("/kpi/overdue-by-due")
@@ -41,9 +45,26 @@ public class RiskController {
             @RequestParam String to,
             @RequestParam(defaultValue = "week") String gran
     ) {
-        return kpi.overdueByDueDate(LocalDate.parse(from),
-                LocalDate.parse(to),
-                gran);
+        LocalDate f = LocalDate.parse(from), t = LocalDate.parse(to);
+        String g = gran.toLowerCase();
+        return results.get("overdueByDue", () -> kpi.overdueByDueDate(f, t, g), f, t, g);
+    }
+
+    // /api/risk/kpi/aging-history?from=2025-01-01&to=2025-03-31&status=OPEN (to defaults to today, from to 90 days before it)
+    @GetMapping("/kpi/aging-history")
+    public List<AgingHistory.Point> agingHistory(@RequestParam(required = false) String from,
+                                                 @RequestParam(required = false) String to,
+                                                 @RequestParam(required = false) String status) {
+        LocalDate t = to == null ? LocalDate.now() : LocalDate.parse(to);
+        LocalDate f = from == null ? t.minusDays(90) : LocalDate.parse(from);
+        return kpi.agingHistory(f, t, status);
+    }
+
+    // /api/risk/kpi/overdue-total?from=2025-01-01&to=2025-03-31
+    @GetMapping("/kpi/overdue-total")
+    public KpiService.OverdueTotal overdueTotal(@RequestParam String from, @RequestParam String to) {
+        LocalDate f = LocalDate.parse(from), t = LocalDate.parse(to);
+        return results.get("overdueTotal", () -> kpi.overdueTotal(f, t), f, t);
     }
 }
 
@@ -0,0 +1,33 @@
+-- Schema as previously generated by Hibernate (ddl-auto: update). Databases that already have
+-- these tables are baselined at this version and only run the migrations after it.
+
+create table customers (
+    id      bigint generated by default as identity,
+    qbo_id  varchar(255) not null,
+    name    varchar(255),
+    primary key (id),
+    constraint uk_customers_qbo_id unique (qbo_id)
+);
+
+create table invoices (
+    id             bigint generated by default as identity,
+    qbo_id         varchar(255),
+    customer_id    bigint,
+    customer_name  varchar(255),
+    status         varchar(255),
+    total_amt      numeric(38,2),
+    balance        numeric(38,2),
+    txn_date       date,
+    due_date       date,
+    content_hash   bigint,
+    primary key (id),
+    constraint uk_invoices_qbo_id unique (qbo_id),
+    constraint fk_invoices_customer foreign key (customer_id) references customers (id)
+);
+
+create table sync_state (
+    realm_id      varchar(255) not null,
+    watermark     timestamp(6) with time zone,
+    last_sync_at  timestamp(6) with time zone,
+    primary key (realm_id)
+);
@@ -0,0 +1,14 @@
+-- One index per hot access path of InvoiceRepository and the analytics loaders;
+-- InvoiceRepositoryTest checks the plans still use them.
+
+-- /invoices?status=..: status filter, newest first (id desc), keyset on id
+create index idx_invoices_status_id on invoices (status, id);
+
+-- customer filter of every list query, newest first
+create index idx_invoices_customer_id on invoices (customer_id, id);
+
+-- balance > 0: open-invoice snapshot load and the overdue count; paid rows are never read
+create index idx_invoices_balance_due on invoices (balance, due_date);
+
+-- overdue pages: due-date bucket range, ordered by (due_date, id)
+create index idx_invoices_due_balance on invoices (due_date, balance);
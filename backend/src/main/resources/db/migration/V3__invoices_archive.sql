@@ -0,0 +1,22 @@
+-- Cold tier: settled (PAID/VOID, no balance) invoices moved out of the working table after a sync.
+-- Same columns as invoices; ids are kept, so a row can move back and forth without renumbering.
+
+create table invoices_archive (
+    id             bigint not null,
+    qbo_id         varchar(255),
+    customer_id    bigint,
+    customer_name  varchar(255),
+    status         varchar(255),
+    total_amt      numeric(38,2),
+    balance        numeric(38,2),
+    txn_date       date,
+    due_date       date,
+    content_hash   bigint,
+    primary key (id),
+    constraint uk_invoices_archive_qbo_id unique (qbo_id),
+    constraint fk_invoices_archive_customer foreign key (customer_id) references customers (id)
+);
+
+-- same list paths as the hot table
+create index idx_invoices_archive_status_id on invoices_archive (status, id);
+create index idx_invoices_archive_customer_id on invoices_archive (customer_id, id);
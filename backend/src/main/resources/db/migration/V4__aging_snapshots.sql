@@ -0,0 +1,11 @@
+-- Daily aging distribution of open invoices (balance > 0): one row per day, status and bucket.
+-- Written from the in-memory due-date histogram in AgingHistory; read by date range on the key.
+
+create table aging_snapshots (
+    snapshot_date  date not null,
+    status         varchar(255) not null,
+    bucket         varchar(16) not null,
+    invoice_count  bigint not null,
+    balance        numeric(38,2) not null,
+    primary key (snapshot_date, status, bucket)
+);
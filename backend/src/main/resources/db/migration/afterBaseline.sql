@@ -0,0 +1,24 @@
+-- Flyway callback, run once right after baseline-on-migrate marks a database created before the
+-- schema moved to Flyway as V1. V1 never ran there, and the oldest such databases only have
+-- invoices, without the customer link or the content hash; bring them up to V1 before V2 indexes
+-- customer_id and V3 references customers. Never runs on a database V1 created.
+
+create table if not exists customers (
+    id      bigint generated by default as identity,
+    qbo_id  varchar(255) not null,
+    name    varchar(255),
+    primary key (id),
+    constraint uk_customers_qbo_id unique (qbo_id)
+);
+
+create table if not exists sync_state (
+    realm_id      varchar(255) not null,
+    watermark     timestamp(6) with time zone,
+    last_sync_at  timestamp(6) with time zone,
+    primary key (realm_id)
+);
+
+alter table invoices add column if not exists customer_id bigint;
+alter table invoices add column if not exists content_hash bigint;
+alter table invoices add constraint if not exists fk_invoices_customer
+    foreign key (customer_id) references customers (id);
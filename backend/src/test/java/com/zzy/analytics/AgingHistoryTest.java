@@ -0,0 +1,154 @@
+package com.zzy.analytics;
+
+import com.zzy.domain.event.InvoiceSyncFinishedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent.Change;
+import com.zzy.domain.event.InvoicesChangedEvent.Row;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/** AgingHistory writing aging_snapshots in an embedded H2, from a stubbed snapshot and a settable day */
+@JdbcTest
+class AgingHistoryTest {
+
+    static final LocalDate TODAY = LocalDate.of(2024, 3, 15);
+
+    OpenInvoiceSnapshots snapshots = mock(OpenInvoiceSnapshots.class);
+    LocalDate day = TODAY;
+    AgingHistory history;
+
+    @BeforeEach
+    void seedSnapshot(@Autowired JdbcTemplate jdbc, @Autowired PlatformTransactionManager txManager) {
+        var b = new OpenInvoiceSnapshot.Builder(6);
+        b.add(1L, "Acme", "OPEN", TODAY.plusDays(5), new BigDecimal("50.00"), new BigDecimal("50.00"));
+        b.add(1L, "Acme", "OPEN", TODAY.minusDays(7), new BigDecimal("100.00"), new BigDecimal("100.00"));
+        b.add(2L, "Bolt", "OPEN", TODAY.minusDays(10), new BigDecimal("40.00"), new BigDecimal("40.00"));
+        b.add(3L, "Cord", "OPEN", TODAY.minusDays(10), new BigDecimal("60.00"), new BigDecimal("60.00"));
+        b.add(3L, "Cord", "PARTIAL_PAID", TODAY.minusDays(95), new BigDecimal("25.00"), new BigDecimal("50.00"));
+        b.add(null, "Dyn", "OPEN", null, new BigDecimal("10.00"), new BigDecimal("10.00")); // no due date
+        when(snapshots.current()).thenReturn(b.build(5));
+
+        history = new AgingHistory(snapshots, jdbc, txManager) {
+            @Override
+            LocalDate today() {
+                return day;
+            }
+        };
+    }
+
+    static Row row(String status, LocalDate due, String balance) {
+        return new Row(1L, "Acme", status, due, new BigDecimal(balance), new BigDecimal("100"));
+    }
+
+    static InvoicesChangedEvent changed(long version, Change... changes) {
+        var e = new InvoicesChangedEvent(List.of(changes));
+        e.stamp(version);
+        return e;
+    }
+
+    /** "[status ]bucket count amount" per stored row of {@code d} */
+    List<String> rows(LocalDate d, String status) {
+        return history.range(d, d, status).stream()
+                .map(p -> (p.status() == null ? "" : p.status() + " ") + p.bucket() + " " + p.count() + " "
+                        + p.amount().toPlainString())
+                .toList();
+    }
+
+    @Test
+    void bucketsTheOpenBalanceAsOfTheDay() {
+        history.flush();
+
+        assertEquals(List.of("OPEN NOT_OVERDUE 2 60.00", "OPEN 0-7 1 100.00", "OPEN 8-30 2 100.00"),
+                rows(TODAY, "OPEN"));
+        assertEquals(List.of("PARTIAL_PAID >90 1 25.00"), rows(TODAY, "PARTIAL_PAID"));
+        assertEquals(List.of("NOT_OVERDUE 2 60.00", "0-7 1 100.00", "8-30 2 100.00", ">90 1 25.00"),
+                rows(TODAY, null));
+        assertEquals(List.of(), rows(TODAY.minusDays(1), null));
+    }
+
+    @Test
+    void readsNeverWriteAndTheFlushPicksUpChanges() {
+        assertEquals(List.of(), rows(TODAY, null)); // nothing flushed yet
+        verifyNoInteractions(snapshots);
+
+        history.flush();
+        assertEquals(5, history.cells());
+
+        // paid off: its cell drops out
+        history.onInvoicesChanged(changed(6, new Change(row("OPEN", TODAY.minusDays(7), "100"),
+                row("OPEN", TODAY.minusDays(7), "0"))));
+        assertEquals(4, history.cells());
+        // a new invoice, and a part payment that moves one to another status
+        history.onInvoicesChanged(changed(7, new Change(null, row("OPEN", TODAY.minusDays(1), "30")),
+                new Change(row("OPEN", TODAY.minusDays(10), "40"), row("PARTIAL_PAID", TODAY.minusDays(10), "20"))));
+        assertEquals(6, history.cells());
+
+        assertEquals(List.of("OPEN NOT_OVERDUE 2 60.00", "OPEN 0-7 1 100.00", "OPEN 8-30 2 100.00"),
+                rows(TODAY, "OPEN")); // until the next flush
+        history.flush();
+        assertEquals(List.of("OPEN NOT_OVERDUE 2 60.00", "OPEN 0-7 1 30.00", "OPEN 8-30 1 60.00"),
+                rows(TODAY, "OPEN"));
+        assertEquals(List.of("PARTIAL_PAID 8-30 1 20.00", "PARTIAL_PAID >90 1 25.00"), rows(TODAY, "PARTIAL_PAID"));
+        verify(snapshots, times(1)).current();
+    }
+
+    @Test
+    void dropsChangesTheSeedAlreadyHolds() {
+        // before the first seed: the seed will have it
+        history.onInvoicesChanged(changed(4, new Change(null, row("OPEN", TODAY.minusDays(1), "30"))));
+        history.flush(); // seeded from version 5
+
+        history.onInvoicesChanged(changed(5, new Change(null, row("OPEN", TODAY.minusDays(1), "30"))));
+        history.onInvoicesChanged(changed(3, new Change(null, row("OPEN", TODAY.minusDays(1), "30"))));
+        history.flush();
+        assertEquals(List.of("OPEN NOT_OVERDUE 2 60.00", "OPEN 0-7 1 100.00", "OPEN 8-30 2 100.00"),
+                rows(TODAY, "OPEN"));
+
+        history.onInvoicesChanged(changed(6, new Change(null, row("OPEN", TODAY.minusDays(1), "30"))));
+        history.flush();
+        assertEquals(List.of("OPEN NOT_OVERDUE 2 60.00", "OPEN 0-7 2 130.00", "OPEN 8-30 2 100.00"),
+                rows(TODAY, "OPEN"));
+    }
+
+    @Test
+    void rolloverClosesYesterdayAndAgesTheNewDay() {
+        history.flush();
+        // lands after the last flush of the day
+        history.onInvoicesChanged(changed(6, new Change(null, row("OPEN", TODAY, "30"))));
+
+        day = TODAY.plusDays(1);
+        history.rollover();
+
+        assertEquals(List.of("OPEN NOT_OVERDUE 3 90.00", "OPEN 0-7 1 100.00", "OPEN 8-30 2 100.00"),
+                rows(TODAY, "OPEN"));
+        // a day later: due yesterday is overdue, and 7 days past due moves to 8-30
+        assertEquals(List.of("OPEN NOT_OVERDUE 2 60.00", "OPEN 0-7 1 30.00", "OPEN 8-30 3 200.00"),
+                rows(day, "OPEN"));
+    }
+
+    @Test
+    void syncReseedsAndRewritesToday() {
+        history.flush();
+
+        var b = new OpenInvoiceSnapshot.Builder(1);
+        b.add(9L, "Iris", "OPEN", TODAY.minusDays(1), new BigDecimal("1.00"), new BigDecimal("1.00"));
+        when(snapshots.current()).thenReturn(b.build(12));
+        history.onSyncFinished(new InvoiceSyncFinishedEvent("realm", 1));
+
+        assertEquals(List.of("0-7 1 1.00"), rows(TODAY, null));
+        history.onInvoicesChanged(changed(12, new Change(null, row("OPEN", TODAY.minusDays(1), "30"))));
+        history.flush();
+        assertEquals(List.of("0-7 1 1.00"), rows(TODAY, null));
+    }
+}
@@ -0,0 +1,127 @@
+package com.zzy.analytics;
+
+import com.zzy.domain.entity.InvoiceEntity;
+import com.zzy.domain.event.InvoiceSyncFinishedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent.Change;
+import com.zzy.domain.event.InvoicesChangedEvent.Row;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** CustomerNameIndex over the Flyway schema in an embedded H2, seeded with customers and legacy invoices */
+@JdbcTest
+class CustomerNameIndexTest {
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    CustomerNameIndex index;
+
+    @BeforeEach
+    void seed() {
+        for (String name : List.of("Café Noir", "CAFE Bleu", "  Zoë Ltd ", "Banan Nana", "Alpha")) {
+            jdbc.update("insert into customers (qbo_id, name) values (?, ?)", "C-" + name.trim(), name);
+        }
+        // legacy rows: no customer_id, so grouped by name; Crème Co is in both tiers
+        jdbc.update("""
+                insert into invoices (qbo_id, customer_id, customer_name, status, total_amt, balance) values
+                  ('Q1', null, 'Crème Co', 'OPEN', 10, 10),
+                  ('Q2', null, 'Crème Co', 'PAID', 10, 0),
+                  ('Q3', null, null, 'OPEN', 10, 10),
+                  ('Q4', (select id from customers where name = 'Alpha'), 'Alpha Old Name', 'OPEN', 10, 10)
+                """);
+        jdbc.update("""
+                insert into invoices_archive (id, qbo_id, customer_id, customer_name, status, total_amt, balance) values
+                  (9001, 'A1', null, 'Crème Co', 'PAID', 10, 0),
+                  (9002, 'A2', null, 'Old Cafe', 'PAID', 10, 0)
+                """);
+        index = new CustomerNameIndex(jdbc);
+    }
+
+    long id(String name) {
+        return jdbc.queryForObject("select id from customers where trim(name) = ?", Long.class, name);
+    }
+
+    Set<Long> ids(String... names) {
+        return Arrays.stream(names).map(this::id).collect(Collectors.toSet());
+    }
+
+    Set<Long> customers(String q) {
+        return Set.copyOf(index.search(q).customerIds());
+    }
+
+    @Test
+    void foldsCaseAndAccents() {
+        assertEquals("zoe ltd", CustomerNameIndex.fold("  Zoë Ltd "));
+        assertEquals("", CustomerNameIndex.fold(null));
+
+        assertEquals(ids("Café Noir", "CAFE Bleu"), customers("cafe"));
+        assertEquals(ids("Café Noir", "CAFE Bleu"), customers("CAFÉ"));
+        assertEquals(ids("Zoë Ltd"), customers("ZOE L"));
+        assertEquals(ids("Zoë Ltd"), customers("zoë"));
+    }
+
+    @Test
+    void intersectsTrigramsThenChecksTheSubstring() {
+        assertEquals(ids("Café Noir"), customers("noir"));
+        assertEquals(ids("Café Noir"), customers("fe no")); // across the blank
+        assertEquals(ids("CAFE Bleu"), customers("afe bl"));
+        assertTrue(index.search("xyz").isEmpty()); // trigram nobody has
+
+        // "banan nana" holds ban, ana and nan but not "banana"
+        assertTrue(index.search("banana").isEmpty());
+        assertEquals(ids("Banan Nana"), customers("banan"));
+    }
+
+    @Test
+    void shortQueriesScanTheFoldedNames() {
+        assertEquals(ids("Zoë Ltd"), customers("zo"));
+        assertEquals(ids("Zoë Ltd"), customers("ZÖ"));
+        assertEquals(ids("Café Noir", "CAFE Bleu", "Banan Nana", "Alpha"), customers("a"));
+        assertEquals(List.of("Crème Co", "Old Cafe"), index.search("c").legacyNames().stream().sorted().toList());
+    }
+
+    @Test
+    void matchesLegacyNamesFromBothTiersOnce() {
+        var creme = index.search("creme");
+        assertEquals(List.of(), creme.customerIds());
+        assertEquals(List.of("Crème Co"), creme.legacyNames()); // the stored spelling, for the invoice filter
+
+        var cafe = index.search("cafe");
+        assertEquals(ids("Café Noir", "CAFE Bleu"), Set.copyOf(cafe.customerIds()));
+        assertEquals(List.of("Old Cafe"), cafe.legacyNames());
+
+        // rows that have a customer are found by the customer's name, not their own
+        assertTrue(index.search("old name").isEmpty());
+    }
+
+    @Test
+    void rebuildsWhenNamesChangeOrAfterSync() {
+        assertTrue(index.search("delta").isEmpty());
+        jdbc.update("insert into customers (qbo_id, name) values ('C-D', 'Delta')");
+
+        // a balance change leaves names alone: the old build is kept
+        var row = new Row(null, "Crème Co", "OPEN", null, BigDecimal.TEN, BigDecimal.TEN);
+        index.onInvoicesChanged(new InvoicesChangedEvent(List.of(
+                new Change(row, new Row(null, "Crème Co", "PAID", null, BigDecimal.ZERO, BigDecimal.TEN)))));
+        assertTrue(index.search("delta").isEmpty());
+
+        index.onInvoicesChanged(InvoicesChangedEvent.inserted(new InvoiceEntity()));
+        assertEquals(ids("Delta"), customers("delta"));
+
+        jdbc.update("insert into invoices_archive (id, qbo_id, customer_name, status) values (9003, 'A3', 'Deltoid', 'PAID')");
+        index.onSyncFinished(new InvoiceSyncFinishedEvent("realm", 1));
+        assertEquals(List.of("Deltoid"), index.search("delt").legacyNames());
+    }
+}
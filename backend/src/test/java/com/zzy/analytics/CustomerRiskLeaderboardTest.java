@@ -0,0 +1,195 @@
+package com.zzy.analytics;
+
+import com.zzy.domain.dto.CustomerRiskDTO;
+import com.zzy.domain.dto.RankMode;
+import com.zzy.domain.event.InvoiceSyncFinishedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent.Change;
+import com.zzy.domain.event.InvoicesChangedEvent.Row;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/** CustomerRiskLeaderboard against a stubbed snapshot and a settable day, driven by stamped InvoicesChangedEvents */
+class CustomerRiskLeaderboardTest {
+
+    static final LocalDate TODAY = LocalDate.of(2024, 3, 15);
+
+    OpenInvoiceSnapshots snapshots = mock(OpenInvoiceSnapshots.class);
+    long day = TODAY.toEpochDay();
+    CustomerRiskLeaderboard board = new CustomerRiskLeaderboard(snapshots) {
+        @Override
+        long today() {
+            return day;
+        }
+    };
+
+    @BeforeEach
+    void seedSnapshot() {
+        var b = new OpenInvoiceSnapshot.Builder(5);
+        b.add(1L, "Acme", "OPEN", TODAY.minusDays(10), new BigDecimal("100.00"), new BigDecimal("100.00"));
+        b.add(1L, "Acme", "OPEN", TODAY.plusDays(5), new BigDecimal("50.00"), new BigDecimal("50.00"));
+        b.add(2L, "Bolt", "PARTIAL_PAID", TODAY.minusDays(3), new BigDecimal("100.00"), new BigDecimal("200.00"));
+        b.add(3L, "Cord", "OPEN", TODAY.minusDays(10), new BigDecimal("40.00"), new BigDecimal("40.00"));
+        b.add(null, " Dyn ", "OPEN", TODAY, new BigDecimal("10.00"), new BigDecimal("10.00")); // due today
+        when(snapshots.current()).thenReturn(b.build(5));
+    }
+
+    static Row row(Long customerId, String name, LocalDate due, String balance, String total) {
+        return new Row(customerId, name, "OPEN", due, new BigDecimal(balance), new BigDecimal(total));
+    }
+
+    static InvoicesChangedEvent changed(long version, Change... changes) {
+        var e = new InvoicesChangedEvent(List.of(changes));
+        e.stamp(version);
+        return e;
+    }
+
+    List<String> names(RankMode mode) {
+        return board.top(mode, 10).stream().map(CustomerRiskDTO::customer).toList();
+    }
+
+    CustomerRiskDTO get(String name) {
+        return board.top(RankMode.AMOUNT, 10).stream().filter(r -> r.customer().equals(name)).findFirst().orElse(null);
+    }
+
+    @Test
+    void ranksOverdueCustomersPerModeAndBreaksTies() {
+        // Acme and Bolt owe the same: the lower key wins
+        assertEquals(List.of("Acme", "Bolt", "Cord"), names(RankMode.AMOUNT));
+        // Acme and Cord share the oldest due day: the larger balance wins
+        assertEquals(List.of("Acme", "Cord", "Bolt"), names(RankMode.MAX_DAYS));
+        // Acme and Cord are both fully overdue: the larger balance wins
+        assertEquals(List.of("Acme", "Cord", "Bolt"), names(RankMode.RATIO));
+        assertEquals(1, board.top(RankMode.AMOUNT, 1).size());
+
+        var acme = get("Acme");
+        assertEquals(1, acme.invoices()); // the invoice due later is not counted
+        assertEquals(0, new BigDecimal("100.00").compareTo(acme.total()));
+        assertEquals(10, acme.maxDpd());
+        assertEquals(0.5, get("Bolt").ratio());
+    }
+
+    @Test
+    void keepsCustomersWithEqualFiguresApartInEveryIndex() {
+        var b = new OpenInvoiceSnapshot.Builder(2);
+        b.add(7L, "Gale", "OPEN", TODAY.minusDays(4), new BigDecimal("9.00"), new BigDecimal("9.00"));
+        b.add(6L, "Fern", "OPEN", TODAY.minusDays(4), new BigDecimal("9.00"), new BigDecimal("9.00"));
+        when(snapshots.current()).thenReturn(b.build(8));
+
+        for (RankMode mode : RankMode.values()) {
+            assertEquals(List.of("Fern", "Gale"), names(mode), mode.name());
+        }
+    }
+
+    @Test
+    void appliesInsertUpdateAndPayOffDeltas() {
+        names(RankMode.AMOUNT); // build
+
+        board.onInvoicesChanged(changed(6, new Change(null, row(4L, "Echo", TODAY.minusDays(1), "500", "500"))));
+        assertEquals(List.of("Echo", "Acme", "Bolt", "Cord"), names(RankMode.AMOUNT));
+
+        // part-paid: Acme moves below Cord on amount but keeps its days past due
+        board.onInvoicesChanged(changed(7, new Change(row(1L, "Acme", TODAY.minusDays(10), "100", "100"),
+                row(1L, "Acme", TODAY.minusDays(10), "30", "100"))));
+        assertEquals(List.of("Echo", "Bolt", "Cord", "Acme"), names(RankMode.AMOUNT));
+        assertEquals(List.of("Cord", "Acme", "Bolt", "Echo"), names(RankMode.MAX_DAYS));
+        assertEquals(0.3, get("Acme").ratio());
+
+        // paid off: Cord leaves every index
+        board.onInvoicesChanged(changed(8, new Change(row(3L, "Cord", TODAY.minusDays(10), "40", "40"),
+                row(3L, "Cord", TODAY.minusDays(10), "0", "40"))));
+        for (RankMode mode : RankMode.values()) assertFalse(names(mode).contains("Cord"), mode.name());
+
+        // not overdue yet, or never counted: no change
+        board.onInvoicesChanged(changed(9, new Change(null, row(5L, "Fern", TODAY, "80", "80")),
+                new Change(row(5L, "Fern", TODAY.minusDays(2), "80", "80"), null)));
+        assertEquals(List.of("Echo", "Bolt", "Acme"), names(RankMode.AMOUNT));
+    }
+
+    @Test
+    void groupsLegacyRowsByTrimmedName() {
+        names(RankMode.AMOUNT);
+
+        board.onInvoicesChanged(changed(6, new Change(null, row(null, "Hale ", TODAY.minusDays(20), "5", "5")),
+                new Change(null, row(null, "Hale", TODAY.minusDays(2), "6", "6"))));
+        var hale = get("Hale");
+        assertNull(hale.customerId());
+        assertEquals(2, hale.invoices());
+        assertEquals(20, hale.maxDpd());
+        assertEquals("Hale", names(RankMode.MAX_DAYS).get(0));
+
+        board.onInvoicesChanged(changed(7, new Change(row(null, " Hale", TODAY.minusDays(20), "5", "5"),
+                row(null, " Hale", TODAY.minusDays(20), "0", "5"))));
+        assertEquals(2, get("Hale").maxDpd());
+    }
+
+    @Test
+    void dropsDeltasTheBuildAlreadyHolds() {
+        names(RankMode.AMOUNT); // built from version 5
+
+        board.onInvoicesChanged(changed(5, new Change(null, row(4L, "Echo", TODAY.minusDays(1), "500", "500"))));
+        board.onInvoicesChanged(changed(3, new Change(null, row(4L, "Echo", TODAY.minusDays(1), "500", "500"))));
+        assertNull(get("Echo"));
+
+        board.onInvoicesChanged(changed(6, new Change(null, row(4L, "Echo", TODAY.minusDays(1), "500", "500"))));
+        assertEquals(1, get("Echo").invoices());
+    }
+
+    @Test
+    void ignoresDeltasBeforeTheFirstBuild() {
+        board.onInvoicesChanged(changed(9, new Change(null, row(4L, "Echo", TODAY.minusDays(1), "500", "500"))));
+
+        assertNull(get("Echo"));
+        verify(snapshots, times(1)).current();
+    }
+
+    @Test
+    void rolloverCountsInvoicesThatFellDueAndAgesTheRest() {
+        assertNull(get("Dyn"));
+
+        day++;
+        board.rollover();
+        var dyn = get("Dyn");
+        assertNotNull(dyn);
+        assertNull(dyn.customerId());
+        assertEquals(1, dyn.maxDpd());
+        assertEquals(11, get("Acme").maxDpd());
+        assertEquals(List.of("Acme", "Cord", "Bolt", "Dyn"), names(RankMode.MAX_DAYS));
+
+        // a delta is counted against the new day
+        board.onInvoicesChanged(changed(6, new Change(null, row(2L, "Bolt", TODAY, "1", "1"))));
+        assertEquals(2, get("Bolt").invoices());
+    }
+
+    @Test
+    void readAfterMidnightRebuildsWhenTheRolloverHasNotRun() {
+        names(RankMode.AMOUNT);
+
+        day += 6;
+        var acme = get("Acme");
+        assertEquals(2, acme.invoices());
+        assertEquals(16, acme.maxDpd());
+        verify(snapshots, times(2)).current();
+    }
+
+    @Test
+    void rebuildsAfterSync() {
+        names(RankMode.AMOUNT);
+
+        var b = new OpenInvoiceSnapshot.Builder(1);
+        b.add(9L, "Iris", "OPEN", TODAY.minusDays(1), new BigDecimal("1.00"), new BigDecimal("1.00"));
+        when(snapshots.current()).thenReturn(b.build(12));
+        board.onSyncFinished(new InvoiceSyncFinishedEvent("realm", 1));
+
+        assertEquals(List.of("Iris"), names(RankMode.AMOUNT));
+        board.onInvoicesChanged(changed(12, new Change(null, row(4L, "Echo", TODAY.minusDays(1), "500", "500"))));
+        assertEquals(List.of("Iris"), names(RankMode.AMOUNT));
+    }
+}
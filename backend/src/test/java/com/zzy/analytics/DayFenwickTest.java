@@ -0,0 +1,83 @@
+package com.zzy.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DayFenwickTest {
+
+    @Test
+    void rangeSumsIncludeBothEndsAndClipToTheTrackedDays() {
+        var f = new DayFenwick(100, 109);
+        f.add(100, 1, 10);
+        f.add(105, 2, 20);
+        f.add(109, 3, 30);
+
+        assertArrayEquals(new long[]{6, 60}, f.sum(100, 109));
+        assertArrayEquals(new long[]{1, 10}, f.sum(100, 100));
+        assertArrayEquals(new long[]{3, 30}, f.sum(109, 109));
+        assertArrayEquals(new long[]{5, 50}, f.sum(101, 109));
+        assertArrayEquals(new long[]{6, 60}, f.sum(0, 1000));
+        assertArrayEquals(new long[]{0, 0}, f.sum(110, 200));
+        assertArrayEquals(new long[]{0, 0}, f.sum(106, 105));
+    }
+
+    @Test
+    void linearBuildMatchesPointUpdates() {
+        long[] count = new long[37], cents = new long[37];
+        var added = new DayFenwick(500, 536);
+        var rnd = new Random(3);
+        for (int i = 0; i < count.length; i++) {
+            count[i] = rnd.nextInt(5);
+            cents[i] = rnd.nextInt(10_000);
+            added.add(500 + i, count[i], cents[i]);
+        }
+        var built = DayFenwick.of(500, count, cents);
+
+        for (long a = 495; a <= 540; a++) {
+            for (long b = a; b <= 540; b++) {
+                assertArrayEquals(added.sum(a, b), built.sum(a, b), a + ".." + b);
+            }
+        }
+    }
+
+    @Test
+    void growsTowardsDaysOutsideTheRangeAndKeepsTheSums() {
+        var f = new DayFenwick(1000, 1009);
+        f.add(1005, 1, 100);
+        f.add(990, 1, 7);      // before the range
+        f.add(5000, 2, 9);     // far after it
+        f.add(1005, -1, -100); // removed again
+
+        assertTrue(f.firstDay() <= 990);
+        assertTrue(f.lastDay() >= 5000);
+        assertArrayEquals(new long[]{1, 7}, f.sum(0, 999));
+        assertArrayEquals(new long[]{0, 0}, f.sum(991, 4999));
+        assertArrayEquals(new long[]{2, 9}, f.sum(5000, 5000));
+        assertArrayEquals(new long[]{3, 16}, f.sum(Long.MIN_VALUE / 2, Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    void randomUpdatesAgreeWithANaiveSum() {
+        var rnd = new Random(1);
+        var f = new DayFenwick(1000, 1010);
+        long[][] naive = new long[400][2]; // days 900..1299
+        for (int i = 0; i < 3000; i++) {
+            int d = rnd.nextInt(400);
+            long c = rnd.nextBoolean() ? 1 : -1, m = rnd.nextInt(1000) - 500;
+            f.add(900 + d, c, m);
+            naive[d][0] += c;
+            naive[d][1] += m;
+
+            int a = rnd.nextInt(400), b = a + rnd.nextInt(400 - a);
+            long sc = 0, sm = 0;
+            for (int k = a; k <= b; k++) {
+                sc += naive[k][0];
+                sm += naive[k][1];
+            }
+            assertArrayEquals(new long[]{sc, sm}, f.sum(900 + a, 900 + b), "step " + i);
+        }
+    }
+}
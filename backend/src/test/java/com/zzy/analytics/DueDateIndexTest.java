@@ -0,0 +1,110 @@
+package com.zzy.analytics;
+
+import com.zzy.domain.event.InvoiceSyncFinishedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import com.zzy.domain.event.InvoicesChangedEvent.Change;
+import com.zzy.domain.event.InvoicesChangedEvent.Row;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/** DueDateIndex against a stubbed snapshot, driven by stamped InvoicesChangedEvents */
+class DueDateIndexTest {
+
+    static final LocalDate TODAY = LocalDate.now();
+
+    OpenInvoiceSnapshots snapshots = mock(OpenInvoiceSnapshots.class);
+    DueDateIndex index = new DueDateIndex(snapshots);
+
+    @BeforeEach
+    void seedSnapshot() {
+        var b = new OpenInvoiceSnapshot.Builder(4);
+        b.add(1L, "A", "OPEN", TODAY.minusDays(10), new BigDecimal("100.00"), new BigDecimal("100.00"));
+        b.add(1L, "A", "OPEN", TODAY.minusDays(10), new BigDecimal("5.50"), new BigDecimal("10.00"));
+        b.add(2L, "B", "PARTIAL_PAID", TODAY.plusDays(3), new BigDecimal("20.00"), new BigDecimal("50.00"));
+        b.add(2L, "B", "OPEN", null, new BigDecimal("1.00"), new BigDecimal("1.00")); // no due date
+        when(snapshots.current()).thenReturn(b.build(5));
+    }
+
+    static Row row(String status, LocalDate due, String balance) {
+        return new Row(1L, "A", status, due, new BigDecimal(balance), new BigDecimal("100"));
+    }
+
+    static InvoicesChangedEvent changed(long version, Change... changes) {
+        var e = new InvoicesChangedEvent(List.of(changes));
+        e.stamp(version);
+        return e;
+    }
+
+    long[] due(LocalDate from, LocalDate to) {
+        return index.sum(from, to);
+    }
+
+    @Test
+    void seedsOpenBalancePerDueDayAndSkipsInvoicesWithoutOne() {
+        assertArrayEquals(new long[]{2, 10550}, due(TODAY.minusDays(10), TODAY.minusDays(10)));
+        assertArrayEquals(new long[]{3, 12550}, due(TODAY.minusDays(400), TODAY.plusDays(400)));
+    }
+
+    @Test
+    void appliesInsertUpdateAndPayOffDeltas() {
+        due(TODAY, TODAY); // seed
+
+        index.onInvoicesChanged(changed(6, new Change(null, row("OPEN", TODAY.minusDays(2), "7"))));
+        assertArrayEquals(new long[]{1, 700}, due(TODAY.minusDays(2), TODAY.minusDays(2)));
+
+        // moved to another day with a smaller balance
+        index.onInvoicesChanged(changed(7, new Change(row("OPEN", TODAY.minusDays(2), "7"),
+                row("PARTIAL_PAID", TODAY.minusDays(40), "3"))));
+        assertArrayEquals(new long[]{0, 0}, due(TODAY.minusDays(2), TODAY.minusDays(2)));
+        assertArrayEquals(new long[]{1, 300}, due(TODAY.minusDays(40), TODAY.minusDays(40)));
+
+        // paid off: leaves the index
+        index.onInvoicesChanged(changed(8, new Change(row("PARTIAL_PAID", TODAY.minusDays(40), "3"),
+                row("PAID", TODAY.minusDays(40), "0"))));
+        assertArrayEquals(new long[]{0, 0}, due(TODAY.minusDays(40), TODAY.minusDays(40)));
+    }
+
+    @Test
+    void dropsDeltasTheSeedAlreadyHolds() {
+        due(TODAY, TODAY); // seeded from version 5
+
+        index.onInvoicesChanged(changed(5, new Change(null, row("OPEN", TODAY.minusDays(1), "9"))));
+        index.onInvoicesChanged(changed(4, new Change(null, row("OPEN", TODAY.minusDays(1), "9"))));
+        assertArrayEquals(new long[]{0, 0}, due(TODAY.minusDays(1), TODAY.minusDays(1)));
+
+        index.onInvoicesChanged(changed(6, new Change(null, row("OPEN", TODAY.minusDays(1), "9"))));
+        assertArrayEquals(new long[]{1, 900}, due(TODAY.minusDays(1), TODAY.minusDays(1)));
+    }
+
+    @Test
+    void ignoresDeltasBeforeTheFirstSeed() {
+        index.onInvoicesChanged(changed(9, new Change(null, row("OPEN", TODAY.minusDays(1), "9"))));
+
+        assertArrayEquals(new long[]{0, 0}, due(TODAY.minusDays(1), TODAY.minusDays(1)));
+        verify(snapshots, times(1)).current();
+    }
+
+    @Test
+    void reseedsAfterSyncAndGrowsForFarDueDates() {
+        due(TODAY, TODAY);
+        index.onInvoicesChanged(changed(6, new Change(null, row("OPEN", LocalDate.of(1990, 1, 1), "2"))));
+        assertFalse(index.firstDay().isAfter(LocalDate.of(1990, 1, 1)));
+        assertArrayEquals(new long[]{1, 200}, due(LocalDate.of(1980, 1, 1), LocalDate.of(1999, 1, 1)));
+
+        var b = new OpenInvoiceSnapshot.Builder(1);
+        b.add(3L, "C", "OPEN", TODAY.minusDays(1), new BigDecimal("1.00"), new BigDecimal("1.00"));
+        when(snapshots.current()).thenReturn(b.build(12));
+        index.onSyncFinished(new InvoiceSyncFinishedEvent("realm", 1));
+
+        assertArrayEquals(new long[]{1, 100}, due(LocalDate.of(1980, 1, 1), TODAY.plusDays(400)));
+        index.onInvoicesChanged(changed(12, new Change(null, row("OPEN", TODAY.minusDays(1), "9"))));
+        assertArrayEquals(new long[]{1, 100}, due(TODAY.minusDays(1), TODAY.minusDays(1)));
+    }
+}
@@ -0,0 +1,114 @@
+package com.zzy.auth;
+
+import com.intuit.oauth2.client.OAuth2PlatformClient;
+import com.intuit.oauth2.config.OAuth2Config;
+import com.intuit.oauth2.data.BearerTokenResponse;
+import com.zzy.config.QboProps;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/** single-flight token refresh against a stubbed Intuit OAuth client */
+class QboAuthServiceTest {
+
+    static final int CALLERS = 16;
+
+    OAuth2PlatformClient client = mock(OAuth2PlatformClient.class);
+    TokenStore store = new TokenStore();
+    QboAuthService auth = new QboAuthService(new QboProps(), store, mock(OAuth2Config.class), client);
+    ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+
+    /** about to expire: inside the inline refresh window */
+    TokenStore.Tokens stale = new TokenStore.Tokens("A1", "R1", System.currentTimeMillis() / 1000 + 10, "realm");
+
+    @BeforeEach
+    void connect() {
+        store.publish(stale);
+    }
+
+    @AfterEach
+    void stop() {
+        pool.shutdownNow();
+    }
+
+    static BearerTokenResponse response(String access, String refresh) {
+        var r = mock(BearerTokenResponse.class);
+        when(r.getAccessToken()).thenReturn(access);
+        when(r.getRefreshToken()).thenReturn(refresh);
+        when(r.getExpiresIn()).thenReturn(3600L);
+        return r;
+    }
+
+    /** every caller refreshes, then reports the snapshot it was left with */
+    List<Future<TokenStore.Tokens>> callAtOnce(int callers) {
+        var start = new CyclicBarrier(callers);
+        List<Future<TokenStore.Tokens>> seen = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            seen.add(pool.submit(() -> {
+                start.await();
+                auth.refreshIfNeeded();
+                return store.snapshot();
+            }));
+        }
+        return seen;
+    }
+
+    @Test
+    void concurrentCallersShareOneRefresh() throws Exception {
+        var release = new CountDownLatch(1);
+        var refreshed = response("A2", "R2");
+        when(client.refreshToken("R1")).thenAnswer(inv -> {
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return refreshed;
+        });
+
+        var seen = callAtOnce(CALLERS);
+        Thread.sleep(200); // let the callers pile up behind the first
+        release.countDown();
+
+        var published = seen.get(0).get(10, TimeUnit.SECONDS);
+        for (var f : seen) assertSame(published, f.get(10, TimeUnit.SECONDS));
+        assertSame(published, store.snapshot());
+        assertEquals("A2", published.accessToken());
+        assertEquals("R2", published.refreshToken());
+        assertFalse(published.expiresWithin(60));
+        verify(client, times(1)).refreshToken(anyString());
+    }
+
+    @Test
+    void reconnectDuringRefreshIsNotOverwritten() throws Exception {
+        var inFlight = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var staleRefresh = response("A-stale", "R-stale");
+        var reconnect = response("A-new", "R-new");
+        when(client.refreshToken("R1")).thenAnswer(inv -> {
+            inFlight.countDown();
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return staleRefresh;
+        });
+        when(client.retrieveBearerTokens(eq("code"), any())).thenReturn(reconnect);
+
+        var seen = callAtOnce(CALLERS);
+        assertTrue(inFlight.await(10, TimeUnit.SECONDS));
+        auth.exchangeCodeForTokens("code", "realm"); // /oauth2redirect lands first
+        release.countDown();
+
+        var reconnected = store.snapshot();
+        assertEquals("A-new", reconnected.accessToken());
+        for (var f : seen) assertSame(reconnected, f.get(10, TimeUnit.SECONDS));
+        assertSame(reconnected, store.snapshot());
+        verify(client, times(1)).refreshToken(anyString());
+    }
+}
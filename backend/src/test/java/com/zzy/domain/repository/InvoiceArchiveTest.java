@@ -0,0 +1,183 @@
+package com.zzy.domain.repository;
+
+import com.zzy.domain.dto.InvoiceRow;
+import com.zzy.domain.entity.InvoiceEntity;
+import com.zzy.domain.event.InvoicesChangedEvent;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * List reads across the working table and invoices_archive, and the bulk writer restoring a
+ * changed archived invoice before it updates it.
+ */
+@DataJpaTest(properties = "app.invoices.archive-settled=true")
+@Import({InvoiceArchiver.class, InvoiceBulkWriter.class})
+@RecordApplicationEvents
+class InvoiceArchiveTest {
+
+    @Autowired
+    InvoiceRepository repo;
+
+    @Autowired
+    InvoiceBulkWriter writer;
+
+    @Autowired
+    InvoiceArchiver archiver;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    ApplicationEvents events;
+
+    static final LocalDate DUE = LocalDate.of(2024, 1, 31);
+
+    static InvoiceEntity invoice(String qboId, String status, String balance) {
+        var e = new InvoiceEntity();
+        e.setQboId(qboId);
+        e.setCustomerName("Customer " + qboId);
+        e.setStatus(status);
+        e.setTotalAmt(new BigDecimal("100.00"));
+        e.setBalance(new BigDecimal(balance));
+        e.setDueDate(DUE);
+        return e;
+    }
+
+    /** ids alternate between the tiers once the settled half is archived */
+    @BeforeEach
+    void seed() {
+        List<InvoiceEntity> rows = new ArrayList<>();
+        for (int i = 1; i <= 25; i++) {
+            rows.add(i % 2 == 0 ? invoice("Q" + i, "PAID", "0") : invoice("Q" + i, "OPEN", "40"));
+        }
+        writer.upsert(rows);
+        assertEquals(12, archiver.archiveSettled());
+        events.clear();
+    }
+
+    List<Long> allIds() {
+        return jdbc.queryForList("select id from invoices union all select id from invoices_archive order by 1 desc",
+                Long.class);
+    }
+
+    static List<Long> ids(List<InvoiceRow> rows) {
+        return rows.stream().map(InvoiceRow::id).toList();
+    }
+
+    int count(String table) {
+        return jdbc.queryForObject("select count(*) from " + table, Integer.class);
+    }
+
+    @Test
+    void offsetPagesWalkBothTiersNewestFirst() {
+        List<Long> seen = new ArrayList<>();
+        for (int p = 0; ; p++) {
+            var page = repo.pageRows(InvoiceFilter.ALL, PageRequest.of(p, 4));
+            assertEquals(25, page.getTotalElements());
+            if (page.isEmpty()) break;
+            seen.addAll(ids(page.getContent()));
+        }
+        assertEquals(allIds(), seen);
+
+        // a short last page
+        assertEquals(allIds().subList(23, 25), ids(repo.pageRows(InvoiceFilter.ALL, PageRequest.of(1, 23)).getContent()));
+        var paid = repo.pageRows(new InvoiceFilter("PAID", null, null), PageRequest.of(0, 50));
+        assertEquals(12, paid.getContent().size());
+        assertTrue(paid.getContent().stream().allMatch(r -> r.status().equals("PAID")));
+    }
+
+    @Test
+    void keysetPagesAndStreamsMergeTheTiers() {
+        List<Long> seen = new ArrayList<>();
+        long before = Long.MAX_VALUE;
+        for (List<InvoiceRow> page; !(page = repo.seekRows(InvoiceFilter.ALL, before, 5)).isEmpty(); ) {
+            assertTrue(page.size() <= 5);
+            seen.addAll(ids(page));
+            before = page.get(page.size() - 1).id();
+        }
+        assertEquals(allIds(), seen);
+
+        try (var s = repo.streamRows(InvoiceFilter.ALL)) {
+            assertEquals(allIds(), s.map(InvoiceRow::id).toList());
+        }
+        assertEquals(25, repo.countRows(InvoiceFilter.ALL));
+        assertEquals(13, repo.countRows(new InvoiceFilter("OPEN", null, null)));
+    }
+
+    @Test
+    void streamsSpanningSeveralKeysetPagesKeepIdOrder() {
+        List<InvoiceEntity> rows = new ArrayList<>();
+        for (int i = 100; i < 2200; i++) {
+            rows.add(i % 3 == 0 ? invoice("Q" + i, "OPEN", "40") : invoice("Q" + i, "PAID", "0"));
+        }
+        writer.upsert(rows);
+        assertEquals(1400, archiver.archiveSettled());
+
+        try (var s = repo.streamRows(InvoiceFilter.ALL)) {
+            assertEquals(allIds(), s.map(InvoiceRow::id).toList());
+        }
+        try (var s = repo.streamRows(new InvoiceFilter("PAID", null, null))) {
+            assertEquals(1412, s.count());
+        }
+    }
+
+    @Test
+    void listsLeaveTheArchiveOutWhileArchivingIsOff(@Autowired EntityManager em,
+                                                     @Autowired NamedParameterJdbcTemplate named,
+                                                     @Autowired PlatformTransactionManager txManager) {
+        var hotOnly = new InvoiceRowQueriesImpl(em, new InvoiceArchiver(named, txManager, false));
+
+        var page = hotOnly.pageRows(InvoiceFilter.ALL, PageRequest.of(0, 50));
+        assertEquals(13, page.getTotalElements());
+        assertTrue(page.getContent().stream().allMatch(r -> r.status().equals("OPEN")));
+        assertEquals(ids(page.getContent()), ids(page.getContent()).stream().sorted(Comparator.reverseOrder()).toList());
+    }
+
+    @Test
+    void changedArchivedInvoiceIsRestoredAndUpdatedInPlace() {
+        long id = jdbc.queryForObject("select id from invoices_archive where qbo_id = 'Q4'", Long.class);
+
+        // refunded: back to an open balance
+        var res = writer.upsert(List.of(invoice("Q4", "OPEN", "25.00"), invoice("Q6", "PAID", "0")));
+        assertEquals(new InvoiceBulkWriter.UpsertResult(0, 1, 1), res);
+
+        assertEquals(0, jdbc.queryForObject("select count(*) from invoices_archive where qbo_id = 'Q4'", Integer.class));
+        var row = jdbc.queryForMap("select id, status, balance from invoices where qbo_id = 'Q4'");
+        assertEquals(id, ((Number) row.get("ID")).longValue()); // same id in both tiers
+        assertEquals("OPEN", row.get("STATUS"));
+        assertEquals(0, new BigDecimal("25.00").compareTo((BigDecimal) row.get("BALANCE")));
+        // the unchanged one stays archived
+        assertEquals(1, jdbc.queryForObject("select count(*) from invoices_archive where qbo_id = 'Q6'", Integer.class));
+        assertEquals(14, count("invoices"));
+        assertEquals(11, count("invoices_archive"));
+
+        // the delta carries the archived values as before
+        var change = events.stream(InvoicesChangedEvent.class).findFirst().orElseThrow().changes().get(0);
+        assertEquals("PAID", change.before().status());
+        assertEquals("OPEN", change.after().status());
+        assertEquals(14, repo.countRows(new InvoiceFilter("OPEN", null, null)));
+
+        // still settled after a later change: the next sweep archives it again
+        writer.upsert(List.of(invoice("Q4", "PAID", "0")));
+        assertEquals(1, archiver.archiveSettled());
+        assertEquals(12, count("invoices_archive"));
+    }
+}
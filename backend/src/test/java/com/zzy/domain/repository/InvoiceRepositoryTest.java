@@ -1,7 +1,173 @@
 package com.zzy.domain.repository;
 
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static org.junit.jupiter.api.Assertions.*;
 
+/**
+ * Runs each InvoiceRepository query, captures the SQL Hibernate sends and checks H2's EXPLAIN
+ * of it seeks the expected index of either tier, with the expected conditions, rather than
+ * scanning a table or walking a whole index.
+ * The unfiltered offset page is left out: it walks the whole table by design, and keyset
+ * paging (seekRows) is its indexed path.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.zzy.domain.repository.InvoiceRepositoryTest$SqlRecorder",
+        "app.invoices.archive-settled=true"})  // list queries read both tiers
+@Import(InvoiceArchiver.class)
 class InvoiceRepositoryTest {
 
-}
\ No newline at end of file
+    public static class SqlRecorder implements StatementInspector {
+        static final List<String> SQL = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            SQL.add(sql);
+            return sql;
+        }
+    }
+
+    @Autowired
+    InvoiceRepository repo;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    static final LocalDate TODAY = LocalDate.now();
+
+    @BeforeEach
+    void seed() {
+        // enough rows that a scan costs more than an index lookup
+        jdbc.update("insert into customers (qbo_id, name) select 'C' || x, 'Customer ' || x from system_range(1, 50)");
+        jdbc.update("""
+                insert into invoices (qbo_id, customer_id, customer_name, status, total_amt, balance, due_date)
+                select 'Q' || x,
+                       case when mod(x, 10) = 0 then null else c.id end,
+                       c.name,
+                       case mod(x, 3) when 0 then 'OPEN' when 1 then 'PAID' else 'PARTIAL_PAID' end,
+                       100, case mod(x, 3) when 1 then 0 else 50 end,
+                       dateadd('DAY', 30 - mod(x, 200), current_date)
+                  from system_range(1, 3000)
+                  join customers c on c.qbo_id = 'C' || (mod(x, 50) + 1)
+                """);
+        jdbc.update("""
+                insert into invoices_archive (id, qbo_id, customer_id, customer_name, status, total_amt, balance)
+                select 100000 + x, 'A' || x, c.id, c.name, 'PAID', 100, 0
+                  from system_range(1, 3000)
+                  join customers c on c.qbo_id = 'C' || (mod(x, 50) + 1)
+                """);
+    }
+
+    static final InvoiceFilter OPEN = new InvoiceFilter("OPEN", null, null);
+    static final InvoiceFilter CUSTOMERS = new InvoiceFilter(null, List.of(1L, 2L), List.of());
+    static final InvoiceFilter LEGACY = new InvoiceFilter(null, List.of(), List.of("Customer 10"));
+    static final InvoiceFilter PAID = new InvoiceFilter("PAID", null, null);
+    static final InvoiceFilter OPEN_CUSTOMERS = new InvoiceFilter("OPEN", List.of(3L), List.of());
+
+    @Test
+    void listQueriesUseIndexes() {
+        assertSeeks(() -> repo.pageRows(OPEN, PageRequest.of(2, 20)), "IDX_INVOICES_STATUS_ID: STATUS = ?1");
+        assertSeeks(() -> repo.pageRows(CUSTOMERS, PageRequest.of(2, 20)),
+                "INVOICES_CUSTOMER", "INVOICES_ARCHIVE_CUSTOMER", "CUSTOMER_ID IN(", "PRIMARY_KEY", ": ID IN(");
+        assertSeeks(() -> repo.pageRows(LEGACY, PageRequest.of(0, 20)), "CUSTOMER_ID IS NULL");
+        assertSeeks(() -> repo.seekRows(InvoiceFilter.ALL, Long.MAX_VALUE, 21), "PRIMARY_KEY", ": ID < ?1");
+        assertSeeks(() -> repo.seekRows(OPEN, 2000, 21), "IDX_INVOICES_STATUS_ID: STATUS = ?1 AND ID < ?2");
+        assertSeeks(() -> repo.seekRows(OPEN_CUSTOMERS, 2000, 21), "IDX_INVOICES_STATUS_ID: ", "STATUS = ?1", "ID < ?3");
+        assertSeeks(() -> repo.countRows(OPEN), "IDX_INVOICES_STATUS_ID: STATUS = ?1");
+        assertSeeks(() -> repo.pageRows(PAID, PageRequest.of(1, 20)),
+                "IDX_INVOICES_STATUS_ID: STATUS = ?1", "IDX_INVOICES_ARCHIVE_STATUS_ID: STATUS = ?2");
+        assertSeeks(() -> repo.seekRows(CUSTOMERS, 2000, 21),
+                "IDX_INVOICES_CUSTOMER_ID: CUSTOMER_ID IN(?1, ?2) AND ID < ?3",
+                "IDX_INVOICES_ARCHIVE_CUSTOMER_ID: CUSTOMER_ID IN(?1, ?2) AND ID < ?3");
+        assertSeeks(() -> repo.countRows(CUSTOMERS), "CUSTOMER_ID IN(");
+        assertSeeks(() -> {
+            try (var s = repo.streamRows(OPEN)) {
+                s.limit(5).forEach(r -> {});
+            }
+        }, "IDX_INVOICES_STATUS_ID: STATUS = ?1");
+    }
+
+    @Test
+    void overdueQueriesUseIndexes() {
+        LocalDate from = TODAY.minusDays(60), to = TODAY.minusDays(30);
+        String dueRange = "IDX_INVOICES_DUE_BALANCE: DUE_DATE < ?2 AND BALANCE > CAST(0 AS NUMERIC(1)) AND DUE_DATE >= ?1";
+        assertSeeks(() -> repo.pageOverdue(from, to, InvoiceFilter.ALL, PageRequest.of(1, 20)), dueRange);
+        assertSeeks(() -> repo.pageOverdue(from, to, CUSTOMERS, PageRequest.of(0, 20)), "CUSTOMER_ID IN(?3, ?4)");
+        assertSeeks(() -> repo.seekOverdue(from, to, from.plusDays(5), 100, InvoiceFilter.ALL, 21), dueRange);
+        assertSeeks(() -> repo.countOverdue(from, to, InvoiceFilter.ALL), dueRange);
+        assertSeeks(() -> repo.overdueCountDerived(), "IDX_INVOICES_DUE_BALANCE: ", "DUE_DATE < CURRENT_DATE");
+    }
+
+    @Test
+    void lookupsAndAggregatesUseIndexes() {
+        assertSeeks(() -> repo.findByQboId("Q42"), "UK_INVOICES_QBO_ID", ": QBO_ID = ?1");
+        // reads every row by design, but in index order so the grouping needs no sort
+        List<String> plans = plans(() -> repo.aggregateByStatus());
+        assertEquals(1, plans.size());
+        assertFalse(plans.get(0).contains(".tableScan"), plans.get(0));
+        assertTrue(plans.get(0).contains("/* PUBLIC.IDX_INVOICES_STATUS_ID */"), plans.get(0));
+        assertTrue(plans.get(0).contains("/* group sorted */"), plans.get(0));
+    }
+
+    /** an index use in a plan: "NAME: conditions", conditions left out when the whole index is walked */
+    private static final Pattern INDEX_USE = Pattern.compile("/\\* PUBLIC\\.(\\w+)(?::\\s+([^*]*?))?\\s*\\*/");
+
+    /**
+     * every table read seeks an index (no scan, and every index use carries a condition), and
+     * each expected fragment is part of some index use, written as "NAME: conditions"
+     */
+    private void assertSeeks(Runnable query, String... expected) {
+        List<String> uses = new ArrayList<>();
+        for (String plan : plans(query)) {
+            assertFalse(plan.contains(".tableScan"), () -> "full scan:\n" + plan);
+            int before = uses.size();
+            for (Matcher m = INDEX_USE.matcher(plan); m.find(); ) {
+                assertNotNull(m.group(2), () -> "index walked without a condition:\n" + plan);
+                uses.add(m.group(1) + ": " + m.group(2).replaceAll("\\s+", " "));
+            }
+            assertTrue(uses.size() > before, () -> "no index in:\n" + plan);
+        }
+        for (String e : expected) {
+            assertTrue(uses.stream().anyMatch(u -> u.contains(e)), () -> "no index use with '" + e + "' in " + uses);
+        }
+    }
+
+    /** EXPLAIN output of every select the query sent to either tier */
+    private List<String> plans(Runnable query) {
+        SqlRecorder.SQL.clear();
+        query.run();
+        List<String> plans = SqlRecorder.SQL.stream()
+                .filter(s -> s.startsWith("select") && s.contains("invoices"))  // either tier
+                .map(this::explain)
+                .toList();
+        assertFalse(plans.isEmpty(), "no query captured");
+        return plans;
+    }
+
+    /** plan only; parameters are bound to null since H2 plans before it sees values */
+    private String explain(String sql) {
+        return jdbc.query(con -> {
+            var ps = con.prepareStatement("explain " + sql);
+            for (int i = 1; i <= ps.getParameterMetaData().getParameterCount(); i++) ps.setObject(i, null);
+            return ps;
+        }, rs -> {
+            rs.next();
+            return rs.getString(1);
+        });
+    }
+}
@@ -0,0 +1,104 @@
+package com.zzy.qbo;
+
+import com.intuit.ipp.data.Error;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.exception.InternalServiceException;
+import com.intuit.ipp.exception.ServiceUnavailableException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** failure classification and the per-realm token bucket of QboCallScheduler */
+class QboCallSchedulerTest {
+
+    static FMSException fault(String... codes) {
+        List<Error> errors = Arrays.stream(codes).map(c -> {
+            var err = new Error();
+            err.setCode(c);
+            err.setMessage("fault " + c);
+            return err;
+        }).toList();
+        return new FMSException(errors);
+    }
+
+    @Test
+    void throttlesAreRecognisedByErrorCodeOnly() {
+        assertTrue(QboCallScheduler.isThrottle(fault("3001")));
+        assertTrue(QboCallScheduler.isThrottle(fault("003001")));
+        assertTrue(QboCallScheduler.isThrottle(fault("6000", "3003")));
+        assertTrue(QboCallScheduler.isThrottle(fault("429")));
+        assertTrue(QboCallScheduler.isThrottle(new RuntimeException("wrapped", fault("3001"))));
+
+        assertFalse(QboCallScheduler.isThrottle(fault("6000")));
+        assertFalse(QboCallScheduler.isThrottle(fault((String) null)));
+        assertFalse(QboCallScheduler.isThrottle(new FMSException("Invoice 4290 failed: ThrottleExceeded in memo")));
+        assertFalse(QboCallScheduler.isThrottle(new RuntimeException("429 Too Many Requests")));
+    }
+
+    @Test
+    void transientFailuresAreRecognisedByTypeOrStatusCode() {
+        assertTrue(QboCallScheduler.isTransient(new ServiceUnavailableException("down")));
+        assertTrue(QboCallScheduler.isTransient(new InternalServiceException("oops")));
+        assertTrue(QboCallScheduler.isTransient(new IOException("reset")));
+        assertTrue(QboCallScheduler.isTransient(new RuntimeException(new SocketTimeoutException("read"))));
+        assertTrue(QboCallScheduler.isTransient(fault("503")));
+        assertTrue(QboCallScheduler.isTransient(fault("0504")));
+
+        // messages quoting numbers or words that look like a status are not
+        assertFalse(QboCallScheduler.isTransient(new FMSException("Invoice 5030 amount 502.00 is invalid")));
+        assertFalse(QboCallScheduler.isTransient(new RuntimeException("request timed out")));
+        assertFalse(QboCallScheduler.isTransient(fault("6240")));
+        assertFalse(QboCallScheduler.isTransient(fault("3001")));
+    }
+
+    @Test
+    void normalizeCodeStripsZeroPaddingOnly() {
+        assertEquals("3001", QboCallScheduler.normalizeCode("003001"));
+        assertEquals("3001", QboCallScheduler.normalizeCode(" 3001 "));
+        assertEquals("0", QboCallScheduler.normalizeCode("000"));
+        assertEquals("6000", QboCallScheduler.normalizeCode("6000"));
+        assertEquals("", QboCallScheduler.normalizeCode(""));
+        assertNull(QboCallScheduler.normalizeCode(null));
+    }
+
+    static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void bucketLetsTheBurstThroughThenPacesAtTheRate() {
+        var b = new QboCallScheduler.TokenBucket(60, 2, 0); // one token a second
+        assertEquals(0, b.reserve(0));
+        assertEquals(0, b.reserve(0));
+        assertEquals(SECOND, b.reserve(0), 1_000);
+        assertEquals(2 * SECOND, b.reserve(0), 1_000); // reservations queue up
+
+        // idle long enough to pay back the debt and refill, but never past the burst
+        assertEquals(0, b.reserve(60 * SECOND));
+        assertEquals(0, b.reserve(60 * SECOND));
+        assertEquals(SECOND, b.reserve(60 * SECOND), 1_000);
+    }
+
+    @Test
+    void throttleHalvesTheRateDownToAFloorAndSuccessesRecoverIt() {
+        var b = new QboCallScheduler.TokenBucket(64, 5, 0);
+        assertEquals(64, b.currentRatePerMinute(), 1e-9);
+
+        b.onThrottle();
+        assertEquals(32, b.currentRatePerMinute(), 1e-9);
+        // the throttle also drops the banked burst
+        assertEquals(60.0 / 32 * SECOND, b.reserve(0), 1_000);
+
+        for (int i = 0; i < 10; i++) b.onThrottle();
+        assertEquals(4, b.currentRatePerMinute(), 1e-9); // max / 16
+
+        // additive increase: max / 20 per success, capped at the configured rate
+        b.onSuccess();
+        assertEquals(4 + 3.2, b.currentRatePerMinute(), 1e-9);
+        for (int i = 0; i < 30; i++) b.onSuccess();
+        assertEquals(64, b.currentRatePerMinute(), 1e-9);
+    }
+}
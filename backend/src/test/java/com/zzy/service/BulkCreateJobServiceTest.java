@@ -0,0 +1,127 @@
+package com.zzy.service;
+
+import com.zzy.domain.dto.BulkCreateJobView;
+import com.zzy.domain.dto.BulkCreateResult;
+import com.zzy.domain.dto.CreateInvoiceReq;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/** job states and progress of BulkCreateJobService over a stubbed InvoiceCreateService */
+class BulkCreateJobServiceTest {
+
+    InvoiceCreateService createSvc = mock(InvoiceCreateService.class);
+    BulkCreateJobService svc = new BulkCreateJobService(createSvc);
+
+    @AfterEach
+    void stop() {
+        svc.shutdown();
+    }
+
+    static List<CreateInvoiceReq> reqs(int n) {
+        List<CreateInvoiceReq> l = new ArrayList<>();
+        for (int i = 0; i < n; i++) l.add(new CreateInvoiceReq());
+        return l;
+    }
+
+    BulkCreateJobView await(String jobId, String state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        BulkCreateJobView v;
+        while (!(v = svc.find(jobId).orElseThrow()).state().equals(state)) {
+            assertTrue(System.nanoTime() < deadline, "job " + jobId + " stuck in " + v.state());
+            Thread.sleep(5);
+        }
+        return v;
+    }
+
+    @Test
+    void jobsQueueRunAndFinishWithTheirProgress() throws Exception {
+        var reported = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var calls = new AtomicInteger();
+        var results = List.of(BulkCreateResult.created(0, "Q1"), BulkCreateResult.failed(1, "bad amount"),
+                BulkCreateResult.created(2, "Q3"));
+        when(createSvc.createAll(anyList(), any())).thenAnswer(inv -> {
+            switch (calls.incrementAndGet()) {
+                case 1 -> {
+                    InvoiceCreateService.BulkCreateListener l = inv.getArgument(1);
+                    l.onItems(2, 1);
+                    reported.countDown();
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                    l.onItems(1, 1);
+                    return results;
+                }
+                case 2 -> throw new IllegalStateException("QBO down");
+                default -> {
+                    return List.of();
+                }
+            }
+        });
+
+        var first = svc.submit(reqs(3));
+        assertTrue(reported.await(10, TimeUnit.SECONDS));
+
+        var running = await(first.jobId(), "RUNNING");
+        assertNotNull(running.startedAt());
+        assertNull(running.finishedAt());
+        assertEquals(3, running.requested());
+        assertEquals(2, running.processed());
+        assertEquals(1, running.created());
+        assertEquals(1, running.failed());
+        assertNull(running.results());
+
+        // waits behind the running one
+        var second = svc.submit(reqs(1));
+        assertEquals("QUEUED", second.state());
+        assertNull(second.startedAt());
+        assertEquals("QUEUED", svc.find(second.jobId()).orElseThrow().state());
+        release.countDown();
+
+        var done = await(first.jobId(), "SUCCEEDED");
+        assertNotNull(done.finishedAt());
+        assertEquals(3, done.processed());
+        assertEquals(2, done.created());
+        assertEquals(1, done.failed());
+        assertEquals(results, done.results());
+        assertNull(done.error());
+
+        var failed = await(second.jobId(), "FAILED");
+        assertEquals("QBO down", failed.error());
+        assertNull(failed.results());
+        assertNotNull(failed.finishedAt());
+
+        assertTrue(svc.find("no-such-job").isEmpty());
+    }
+
+    @Test
+    void submitsPastTheQueueAreRejected() throws Exception {
+        var release = new CountDownLatch(1);
+        when(createSvc.createAll(anyList(), any())).thenAnswer(inv -> {
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return List.of();
+        });
+
+        var running = svc.submit(reqs(1));
+        await(running.jobId(), "RUNNING");
+        List<BulkCreateJobView> queued = new ArrayList<>();
+        for (int i = 0; i < BulkCreateJobService.QUEUE; i++) queued.add(svc.submit(reqs(1)));
+
+        assertThrows(RejectedExecutionException.class, () -> svc.submit(reqs(1)));
+
+        release.countDown();
+        for (var job : queued) await(job.jobId(), "SUCCEEDED");
+        await(svc.submit(reqs(1)).jobId(), "SUCCEEDED"); // room again
+        verify(createSvc, times(BulkCreateJobService.QUEUE + 2)).createAll(anyList(), any());
+    }
+}
@@ -0,0 +1,160 @@
+package com.zzy.service;
+
+import com.intuit.ipp.data.Invoice;
+import com.intuit.ipp.data.ModificationMetaData;
+import com.intuit.ipp.services.DataService;
+import com.intuit.ipp.services.QueryResult;
+import com.zzy.auth.TokenStore;
+import com.zzy.domain.entity.InvoiceEntity;
+import com.zzy.domain.entity.SyncStateEntity;
+import com.zzy.domain.repository.InvoiceArchiver;
+import com.zzy.domain.repository.InvoiceBulkWriter;
+import com.zzy.domain.repository.SyncStateRepository;
+import com.zzy.qbo.QboCallScheduler;
+import com.zzy.service.InvoiceSyncService.SyncMode;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/** incremental paging of InvoiceSyncService against a stubbed QBO that orders by LastUpdatedTime */
+class InvoiceSyncServiceTest {
+
+    static final Instant T0 = Instant.parse("2024-05-01T10:00:00Z");
+    static final Pattern SINCE = Pattern.compile("LastUpdatedTime >= '([^']+)'");
+    static final Pattern PAGE = Pattern.compile("startposition (\\d+) maxresults (\\d+)");
+
+    static Instant t(int minutes) {
+        return T0.plusSeconds(60L * minutes);
+    }
+
+    /** QBO's side: every invoice, in LastUpdatedTime order */
+    final List<Invoice> qboRows = new ArrayList<>();
+    final List<String> queries = new ArrayList<>();
+
+    final SyncStateEntity state = new SyncStateEntity();
+    final List<List<String>> upserted = new ArrayList<>();
+    final List<Instant> persistedWatermarks = new ArrayList<>();
+
+    InvoiceSyncService service() throws Exception {
+        var ds = mock(DataService.class);
+        when(ds.executeQuery(anyString())).thenAnswer(inv -> query(inv.getArgument(0)));
+        var qbo = mock(QboCallScheduler.class);
+        when(qbo.call(any())).thenAnswer(inv -> inv.<QboCallScheduler.QboCall<?>>getArgument(0).apply(ds));
+
+        var writer = mock(InvoiceBulkWriter.class);
+        when(writer.upsert(anyList())).thenAnswer(inv -> {
+            List<InvoiceEntity> rows = inv.getArgument(0);
+            upserted.add(rows.stream().map(InvoiceEntity::getQboId).toList());
+            return new InvoiceBulkWriter.UpsertResult(0, rows.size(), 0);
+        });
+
+        state.setRealmId("realm");
+        state.setWatermark(T0);
+        var stateRepo = mock(SyncStateRepository.class);
+        when(stateRepo.findById("realm")).thenReturn(Optional.of(state));
+        when(stateRepo.save(any())).thenAnswer(inv -> {
+            persistedWatermarks.add(inv.<SyncStateEntity>getArgument(0).getWatermark());
+            return inv.getArgument(0);
+        });
+
+        var store = new TokenStore();
+        store.publish(new TokenStore.Tokens("a", "r", Long.MAX_VALUE, "realm"));
+        return new InvoiceSyncService(qbo, writer, stateRepo, store, mock(PlatformTransactionManager.class),
+                mock(ApplicationEventPublisher.class), mock(InvoiceArchiver.class));
+    }
+
+    void qboInvoice(int id, Instant lastUpdated) {
+        var md = new ModificationMetaData();
+        md.setLastUpdatedTime(Date.from(lastUpdated));
+        var inv = new Invoice();
+        inv.setId(String.valueOf(id));
+        inv.setMetaData(md);
+        inv.setTotalAmt(BigDecimal.TEN);
+        inv.setBalance(BigDecimal.TEN);
+        qboRows.add(inv);
+        qboRows.sort(Comparator.comparing((Invoice i) -> i.getMetaData().getLastUpdatedTime())
+                .thenComparing(i -> Integer.parseInt(i.getId())));
+    }
+
+    QueryResult query(String sql) {
+        queries.add(sql);
+        Matcher since = SINCE.matcher(sql);
+        Instant from = since.find() ? OffsetDateTime.parse(since.group(1)).toInstant() : Instant.MIN;
+        List<Invoice> matching = qboRows.stream()
+                .filter(i -> !i.getMetaData().getLastUpdatedTime().toInstant().isBefore(from))
+                .toList();
+
+        var r = new QueryResult();
+        Matcher page = PAGE.matcher(sql);
+        if (!page.find()) {
+            r.setTotalCount(matching.size());
+            return r;
+        }
+        int start = Integer.parseInt(page.group(1)) - 1, max = Integer.parseInt(page.group(2));
+        r.setEntities(matching.subList(Math.min(start, matching.size()), Math.min(start + max, matching.size())));
+        return r;
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void pagesThroughRowsSharingOneTimestampWithoutSkipping(boolean pipelined) throws Exception {
+        qboInvoice(0, T0);                                 // already pulled by the last sync
+        for (int id = 1; id <= 7; id++) qboInvoice(id, t(1)); // more than a page on one timestamp
+        qboInvoice(8, t(2));
+        qboInvoice(9, t(3));
+        qboInvoice(10, t(3));
+        qboInvoice(11, t(4));
+
+        var res = service().syncFromQbo(3, SyncMode.INCREMENTAL, pipelined, InvoiceSyncService.SyncListener.NONE);
+
+        assertEquals(SyncMode.INCREMENTAL, res.mode());
+        assertEquals(List.of(
+                List.of("0", "1", "2"),  // reaches t1: the next page restarts there
+                List.of("1", "2", "3"),  // all t1: start moves on
+                List.of("4", "5", "6"),
+                List.of("7", "8", "9"),  // mixed: restarts at t3
+                List.of("9", "10", "11"),
+                List.of("11")), upserted);
+        // each page's watermark is that page's max, stored with its rows
+        assertEquals(List.of(t(1), t(1), t(1), t(3), t(4), t(4)), persistedWatermarks);
+        assertEquals(t(4), state.getWatermark());
+        assertEquals(6, res.pages());
+
+        var seen = new TreeSet<Integer>();
+        upserted.forEach(p -> p.forEach(id -> seen.add(Integer.parseInt(id))));
+        assertEquals(12, seen.size()); // none skipped
+        assertEquals(7, queries.size()); // six pages and the count
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void aFullLastPageEndsOnTheEmptyOneAfterIt(boolean pipelined) throws Exception {
+        for (int id = 1; id <= 6; id++) qboInvoice(id, t(1));
+
+        var res = service().syncFromQbo(3, SyncMode.INCREMENTAL, pipelined, InvoiceSyncService.SyncListener.NONE);
+
+        assertEquals(List.of(List.of("1", "2", "3"), List.of("1", "2", "3"), List.of("4", "5", "6")), upserted);
+        assertEquals(List.of(t(1), t(1), t(1)), persistedWatermarks);
+        assertEquals(3, res.pages());
+        assertTrue(queries.get(queries.size() - 1).contains("startposition 7"));
+    }
+}
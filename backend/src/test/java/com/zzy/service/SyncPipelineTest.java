@@ -0,0 +1,117 @@
+package com.zzy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** SyncPipeline ending normally and on a failing stage, with the fetch and map threads it leaves behind */
+class SyncPipelineTest {
+
+    static final Duration HANG = Duration.ofSeconds(10);
+
+    final AtomicReference<Thread> fetcher = new AtomicReference<>();
+    final AtomicReference<Thread> mapper = new AtomicReference<>();
+    final AtomicInteger fetches = new AtomicInteger();
+
+    /** pages 0..pages-1, then the end; the page numbered failAt throws instead */
+    SyncPipeline.Source<Integer> source(int pages, int failAt, Exception failure) {
+        return () -> {
+            fetcher.set(Thread.currentThread());
+            int n = fetches.getAndIncrement();
+            if (n == failAt) throw failure;
+            return n < pages ? n : null;
+        };
+    }
+
+    SyncPipeline.Mapper<Integer, String> mapping() {
+        return page -> {
+            mapper.set(Thread.currentThread());
+            return "p" + page;
+        };
+    }
+
+    void assertStagesStopped() throws InterruptedException {
+        for (var t : List.of(fetcher.get(), mapper.get())) {
+            t.join(HANG.toMillis());
+            assertFalse(t.isAlive(), t.getName() + " still running");
+        }
+    }
+
+    @Test
+    void writesEveryPageInOrderUntilTheEnd() throws Exception {
+        List<String> written = new ArrayList<>();
+        assertTimeoutPreemptively(HANG, () -> SyncPipeline.run(2, source(50, -1, null), mapping(), written::add));
+
+        assertEquals(50, written.size());
+        assertEquals("p0", written.get(0));
+        assertEquals("p49", written.get(49));
+        assertEquals(51, fetches.get()); // the last call saw the end
+        assertNotSame(Thread.currentThread(), fetcher.get());
+        assertNotSame(fetcher.get(), mapper.get());
+        assertStagesStopped();
+    }
+
+    @Test
+    void sourceFailureReachesTheCallerAfterThePagesBeforeIt() throws Exception {
+        var failure = new IOException("QBO read failed");
+        List<String> written = new ArrayList<>();
+        // a slow writer: both queues are full when the source fails
+        SyncPipeline.Sink<String> slow = page -> {
+            Thread.sleep(20);
+            written.add(page);
+        };
+
+        var thrown = assertThrows(IOException.class,
+                () -> assertTimeoutPreemptively(HANG, () -> SyncPipeline.run(2, source(100, 10, failure), mapping(), slow)));
+
+        assertSame(failure, thrown);
+        assertEquals(10, written.size());
+        assertEquals(11, fetches.get()); // nothing fetched after the failure
+        assertStagesStopped();
+    }
+
+    @Test
+    void sinkFailureStopsTheFetcherBlockedOnAFullQueue() throws Exception {
+        var failure = new IllegalStateException("DB write failed");
+        AtomicInteger writes = new AtomicInteger();
+        SyncPipeline.Sink<String> failing = page -> {
+            if (writes.incrementAndGet() == 3) throw failure;
+        };
+
+        // an endless source: only the writer's failure can stop it
+        var thrown = assertThrows(IllegalStateException.class,
+                () -> assertTimeoutPreemptively(HANG, () -> SyncPipeline.run(2, source(Integer.MAX_VALUE, -1, null),
+                        mapping(), failing)));
+
+        assertSame(failure, thrown);
+        assertStagesStopped();
+        // three written, then at most two per queue plus one in each stage's hands
+        assertTrue(fetches.get() <= 3 + 2 + 2 + 2, "fetched " + fetches.get());
+    }
+
+    @Test
+    void mapperFailureReachesTheCaller() throws Exception {
+        var failure = new IllegalArgumentException("unmappable");
+        List<String> written = new ArrayList<>();
+        SyncPipeline.Mapper<Integer, String> failing = page -> {
+            mapper.set(Thread.currentThread());
+            if (page == 4) throw failure;
+            return "p" + page;
+        };
+
+        var thrown = assertThrows(IllegalArgumentException.class,
+                () -> assertTimeoutPreemptively(HANG, () -> SyncPipeline.run(1, source(Integer.MAX_VALUE, -1, null),
+                        failing, written::add)));
+
+        assertSame(failure, thrown);
+        assertEquals(List.of("p0", "p1", "p2", "p3"), written);
+        assertStagesStopped();
+    }
+}
@@ -60,7 +60,7 @@ export async function fetchSummary() {
 export async function fetchOverdueByDue(params: {
     from: string;   // '2025-07-01'
     to: string;     // '2025-10-01'
-    gran?: 'day' | 'week';
+    gran?: 'day' | 'week' | 'month';
 }) {
     const r = await fetch(`${BASE}/risk/kpi/overdue-by-due?${qs(params)}`);
     if (!r.ok) {
@@ -78,7 +78,7 @@ export async function fetchRiskTop(params: {
     const r = await fetch(`${BASE}/risk/customers?${s}`);
     if (!r.ok) throw new Error(await r.text());
     return r.json() as Promise<Array<{
-        customer: string; invoices: number; total: number;
+        customerId: number | null; customer: string; invoices: number; total: number;
         overdue: number; maxDpd: number; ratio: number;
     }>>;
 }
@@ -100,6 +100,7 @@ export async function adminCompany() {
     return r.json();
 }
 
+/** starts (or joins) a background sync; returns { jobId, joined, job } */
 export async function adminSync(batch = 200) {
     const r = await fetch(`${ROOT}/api/admin/sync-qbo?batch=${batch}`, {
         method: 'POST',
@@ -110,3 +111,12 @@ export async function adminSync(batch = 200) {
     if (!r.ok) throw new Error(JSON.stringify(body));
     return body;
 }
+
+export async function adminSyncJob(jobId: string) {
+    const r = await fetch(`${ROOT}/api/admin/sync-jobs/${encodeURIComponent(jobId)}`, {
+        headers: authHeader(),
+        credentials: 'include',
+    });
+    if (!r.ok) throw new Error(`sync job ${r.status}`);
+    return r.json();
+}
@@ -1,6 +1,6 @@
 import {useState} from 'react';
 import {Box, Card, CardContent, Typography, Button, Alert, Divider, Paper, Grid} from '@mui/material';
-import {adminCompany, adminSync} from '../api';
+import {adminCompany, adminSync, adminSyncJob} from '../api';
 
 const API_ROOT = 'http://localhost:8080';
 
@@ -65,9 +65,19 @@ export default function Admin() {
                                     setSyncing(true);
                                     setMsg(null);
                                     try {
-                                        const r = await adminSync(200);
-                                        setResult(r);
-                                        setMsg(`Synced: upserts=${r?.upserts ?? '?'}`);
+                                        const {jobId} = await adminSync(200);
+                                        let job = await adminSyncJob(jobId);
+                                        while (job.state === 'RUNNING') {
+                                            setResult(job);
+                                            setMsg(`Syncing: pages=${job.pagesDone}, upserts=${job.rowsUpserted}`
+                                                + (job.etaSeconds != null ? `, eta=${job.etaSeconds}s` : ''));
+                                            await new Promise(res => setTimeout(res, 1000));
+                                            job = await adminSyncJob(jobId);
+                                        }
+                                        setResult(job);
+                                        setMsg(job.state === 'SUCCEEDED'
+                                            ? `Synced: upserts=${job.rowsUpserted}`
+                                            : `Sync failed: ${job.error ?? '?'}`);
                                     } catch (e: any) {
                                         setMsg(e?.message || 'Sync failed');
                                     } finally {
@@ -63,6 +63,7 @@ export default function InvoiceInsights() {
     const [topN, setTopN] = useState<number>(10);
     const [mode, setMode] = useState<RiskModeUI>('AMOUNT'); // BY AMOUNT / BY MAX DAYS / BY %
     const [riskRows, setRiskRows] = useState<Array<{
+        customerId: number | null;
         customer: string;
         invoices: number;
         total: number;
@@ -24,6 +24,8 @@ export interface Page<T> {
     totalPages: number;
     size: number;
     number: number;
+    /** keyset mode only (request sent with `cursor`); null on the last page */
+    nextCursor?: string | null;
 }
 
 export interface SummaryView {